@@ -3,15 +3,20 @@ import java.util.concurrent.*;
 
 public class Benchmarks {
 
+    static int layout = MemoryManager.LAYOUT_V1;
+    static int backend = MemoryManager.BACKEND_UNSAFE;
+    static final int CONTENTION_THREADS = 24;                           //Threads im Vergleich Flat Combining und Sperre
+
     public static void main(String[] args) throws IllegalAccessException, InterruptedException, NoSuchFieldException, ExecutionException {
         int mode = Integer.parseInt(args[0]);
         long size = Long.parseLong(args[1]) * 100000000;
         int initblocksize = Integer.parseInt(args[2]) * 1000000;
         int objectsize = Integer.parseInt(args[3]);
         int testitertions = Integer.parseInt(args[4]);
+        if(args.length > 5) layout = Integer.parseInt(args[5]);             //optional: Blockformat 1 oder 2
         double duration = 0;
 
-        System.out.println(args[1] + "00MB Memory");
+        System.out.println(args[1] + "00MB Memory, layout v" + layout);
 
         switch (mode){
             case 1:
@@ -93,6 +98,16 @@ public class Benchmarks {
                     duration += benchmarkAllocations(size, 24, initblocksize, objectsize, 10000);
                 System.out.println("Average Time ("+ testitertions +" runs): " + duration/(double) testitertions);
 
+                for(int segments : new int[]{1, 24}) {      //gleiche Allokationen, aber von CONTENTION_THREADS Threads gleichzeitig
+                    for(int combining = 0; combining <= 1; combining++) {
+                        duration = 0;
+                        System.out.println(segments + (segments == 1 ? " segment, " : " segments, ") + CONTENTION_THREADS + " threads, " + (combining == 1 ? "flat combining" : "locking"));
+                        for(int i = 0; i < testitertions; i++)
+                            duration += benchmarkConcurrentAllocations(size, segments, initblocksize, objectsize, 10000, combining == 1);
+                        System.out.println("Average Time ("+ testitertions +" runs): " + duration/(double) testitertions);
+                    }
+                }
+
                 break;
             case 3:
                 System.out.println("Reads");
@@ -254,6 +269,53 @@ public class Benchmarks {
                     duration += benchmarkWritesAndReads(size, 24, initblocksize, objectsize, 1000, 9);
                 System.out.println("Average Time ("+ testitertions +" runs): " + duration/(double) testitertions);
 
+                break;
+
+            case 7:
+                System.out.println("Backends, Unsafe vs. Foreign Function & Memory API");
+
+                for(int b = MemoryManager.BACKEND_UNSAFE; b <= MemoryManager.BACKEND_FOREIGN; b++) {
+                    if(b == MemoryManager.BACKEND_FOREIGN && !ForeignBackend.isAvailable()) {
+                        System.out.println("FFM backend is not available");
+                        break;
+                    }
+                    backend = b;
+                    System.out.println(b == MemoryManager.BACKEND_UNSAFE ? "Unsafe backend" : "FFM backend");
+
+                    duration = 0;
+                    System.out.println("24 segments, allocations");
+                    for(int i = 0; i < testitertions; i++)
+                        duration += benchmarkAllocations(size, 24, initblocksize, objectsize, 10000);
+                    System.out.println("Average Time ("+ testitertions +" runs): " + duration/(double) testitertions);
+
+                    duration = 0;
+                    System.out.println("24 segments, reads");
+                    for(int i = 0; i < testitertions; i++)
+                        duration += benchmarkReads(size, 24, initblocksize, objectsize, 1000, 5000);
+                    System.out.println("Average Time ("+ testitertions +" runs): " + duration/(double) testitertions);
+
+                    duration = 0;
+                    System.out.println("24 segments, 90% reads 10% writes");
+                    for(int i = 0; i < testitertions; i++)
+                        duration += benchmarkWritesAndReads(size, 24, initblocksize, objectsize, 1000, 9);
+                    System.out.println("Average Time ("+ testitertions +" runs): " + duration/(double) testitertions);
+                }
+
+                break;
+
+            case 8:
+                System.out.println("Flat combining vs. locking, " + CONTENTION_THREADS + " threads");
+
+                for(int segments : new int[]{1, 4}) {
+                    for(int combining = 0; combining <= 1; combining++) {
+                        duration = 0;
+                        System.out.println(segments + (segments == 1 ? " segment, " : " segments, ") + (combining == 1 ? "flat combining" : "locking"));
+                        for(int i = 0; i < testitertions; i++)
+                            duration += benchmarkContention(size, segments, initblocksize, objectsize, 10000, combining == 1);
+                        System.out.println("Average Time ("+ testitertions +" runs): " + duration/(double) testitertions);
+                    }
+                }
+
                 break;
         }
     }
@@ -263,7 +325,7 @@ public class Benchmarks {
 
     public static double benchmarkInit(long size, int segments, int initblocksize) throws IllegalAccessException, InterruptedException, NoSuchFieldException {
         long starttime = System.nanoTime();
-        MemoryManager memoryManager = new MemoryManager(size, segments, initblocksize);
+        MemoryManager memoryManager = new MemoryManager(size, segments, initblocksize, layout, backend);
 
         long endtime = System.nanoTime();
 
@@ -278,7 +340,7 @@ public class Benchmarks {
     }
     public static double benchmarkAllocations(long size, int segments, int initblocksize, int objectsize, int writes) throws IllegalAccessException, InterruptedException, NoSuchFieldException, ExecutionException {
 
-        MemoryManager memoryManager = new MemoryManager(size, segments, initblocksize);
+        MemoryManager memoryManager = new MemoryManager(size, segments, initblocksize, layout, backend);
         byte[] object = new byte[objectsize];
         long[] addresses = new long[writes];
 
@@ -306,9 +368,79 @@ public class Benchmarks {
         return duration;
     }
 
+    public static double benchmarkConcurrentAllocations(long size, int segments, int initblocksize, int objectsize, int writes, boolean combining) throws IllegalAccessException, InterruptedException, NoSuchFieldException, ExecutionException {
+
+        MemoryManager memoryManager = new MemoryManager(size, segments, initblocksize, layout, backend);
+        if(combining) memoryManager.enableFlatCombining();
+        byte[] object = new byte[objectsize];
+        long[] addresses = new long[writes];
+
+        ExecutorService es = Executors.newFixedThreadPool(CONTENTION_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] futures = new Future<?>[CONTENTION_THREADS];
+        for(int t = 0; t < CONTENTION_THREADS; t++){
+            int first = t;
+            futures[t] = es.submit(() -> {                  //jeder Thread schreibt jede CONTENTION_THREADS-te Adresse
+                start.await();
+                for(int i = first; i < writes; i += CONTENTION_THREADS)
+                    addresses[i] = memoryManager.allocateSerialized(object);
+                return null;
+            });
+        }
+
+        long starttime = System.nanoTime();
+        start.countDown();
+        for(Future<?> future : futures) future.get();
+        long endtime = System.nanoTime();
+        es.shutdown();
+
+        double duration = (endtime - starttime)/1000000.0;
+
+        memoryManager.cleanup();
+
+        return duration;
+    }
+
+    public static double benchmarkContention(long size, int segments, int initblocksize, int objectsize, int operations, boolean combining) throws IllegalAccessException, InterruptedException, NoSuchFieldException, ExecutionException {
+
+        MemoryManager memoryManager = new MemoryManager(size, segments, initblocksize, layout, backend);
+        if(combining) memoryManager.enableFlatCombining();
+        byte[] object = new byte[objectsize];
+        ByteArrayCodec codec = new ByteArrayCodec();                 //zustandslos, wird von allen Threads geteilt
+
+        ExecutorService es = Executors.newFixedThreadPool(CONTENTION_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] futures = new Future<?>[CONTENTION_THREADS];
+        for(int t = 0; t < CONTENTION_THREADS; t++){
+            futures[t] = es.submit(() -> {                  //jeder Thread haelt wenige Objekte und gibt jeweils das aelteste frei
+                long[] window = new long[16];
+                start.await();
+                for(int i = 0; i < operations; i++){
+                    int slot = i % window.length;
+                    if(window[slot] != 0) memoryManager.deallocate(window[slot]);
+                    window[slot] = memoryManager.allocate(object, codec);
+                }
+                for(long address : window) if(address != 0) memoryManager.deallocate(address);
+                return null;
+            });
+        }
+
+        long starttime = System.nanoTime();
+        start.countDown();
+        for(Future<?> future : futures) future.get();
+        long endtime = System.nanoTime();
+        es.shutdown();
+
+        double duration = (endtime - starttime)/1000000.0;
+
+        memoryManager.cleanup();
+
+        return duration;
+    }
+
     public static double benchmarkReads(long size, int segments, int initblocksize, int objectsize, int writes, int reads) throws IllegalAccessException, InterruptedException, NoSuchFieldException, ExecutionException {
 
-        MemoryManager memoryManager = new MemoryManager(size, segments, initblocksize);
+        MemoryManager memoryManager = new MemoryManager(size, segments, initblocksize, layout, backend);
         byte[] object = new byte[objectsize];
 
         long[] addresses = new long[writes];
@@ -354,7 +486,7 @@ public class Benchmarks {
 
     public static double benchmarkWritesAndReads(long size, int segments, int initblocksize, int objectsize, int writes, int readsperwrite) throws IllegalAccessException, InterruptedException, NoSuchFieldException, ExecutionException {
 
-        MemoryManager memoryManager = new MemoryManager(size, segments, initblocksize);
+        MemoryManager memoryManager = new MemoryManager(size, segments, initblocksize, layout, backend);
         byte[] object = new byte[objectsize];
         long[] addresses = new long[writes];
         byte[][] objects = new byte[writes * readsperwrite][objectsize];
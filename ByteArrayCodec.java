@@ -0,0 +1,23 @@
+// Codec fuer bereits serialisierte Objekte, die Bytes werden unveraendert in den Block kopiert.
+
+
+public class ByteArrayCodec implements Codec<byte[]> {
+
+    @Override
+    public int getEncodedSize(byte[] object){
+        return object.length;
+    }
+
+    @Override
+    public void encode(byte[] object, OffHeapAccess target, long address){
+        target.copyFromArray(object, 0, address, object.length);
+    }
+
+    @Override
+    public byte[] decode(OffHeapAccess source, long address, int size){
+        byte[] object = new byte[size];
+        source.copyToArray(address, object, 0, size);
+        return object;
+    }
+
+}
@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Inkrementelle Sicherung des OffHeaps in eine Abbilddatei.
+// Schreibzugriffe des MemoryManagers markieren die betroffenen 4KB-Seiten ihres Segments als veraendert. Ein
+// Checkpoint kopiert je Segment unter dessen Lesesperre nur die veraenderten Bereiche in ein Journal, Lesezugriffe
+// und die uebrigen Segmente laufen dabei weiter. Erst wenn das Journal vollstaendig auf dem Datentraeger liegt, wird
+// es in das Abbild uebertragen, so enthaelt das Abbild nach einem Absturz immer den Stand des letzten Checkpoints.
+//
+// Aufbau des Abbilds: Magic, Version, Layout, Segmente, Blockgroesse, Heapgroesse, ab HEADER_SIZE der Heap.
+// Aufbau des Journals: je Bereich Adresse und Laenge (8B) gefolgt von den Daten, am Ende -1 und Anzahl der Bereiche.
+
+
+public class Checkpoint {
+
+    public static final long MAGIC = 0x4F4646484541500BL;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 4096;
+    public static final int PAGE_SHIFT = 12;                    //Groesse der verfolgten Seiten 4KB
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    public final int layout;
+    public final int segments;
+    public final int initblocksize;
+    public final long heapsize;
+
+    private final FileChannel snapshot;
+    private final FileChannel journal;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private MemoryManager memoryManager;
+    private SegmentHeader[] segmentlist;
+    private long segmentstride;                                 //Abstand der Segmentanfaenge
+    private AtomicLongArray[] dirtypages;                       //je Segment ein Bit pro veraenderter Seite
+    private long[] pages;                                       //Kopie der Bitmap des gerade gesicherten Segments
+    private long ranges;                                        //Anzahl der Bereiche im aktuellen Journal
+    private boolean complete;                                   //true, sobald das Abbild einen vollstaendigen Checkpoint enthaelt
+
+    private Checkpoint(Path file, int layout, int segments, int initblocksize, long heapsize, boolean complete) throws IOException {
+        this.snapshot = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.journal = FileChannel.open(getJournalPath(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.layout = layout;
+        this.segments = segments;
+        this.initblocksize = initblocksize;
+        this.heapsize = heapsize;
+        this.complete = complete;
+    }
+
+    public static Checkpoint create(Path file, int layout, int segments, int initblocksize, long heapsize) throws IOException {   //legt neues Abbild an
+        Checkpoint checkpoint = new Checkpoint(file, layout, segments, initblocksize, heapsize, false);
+        checkpoint.snapshot.truncate(0);
+        checkpoint.journal.truncate(0);
+        return checkpoint;
+    }
+
+    public static Checkpoint open(Path file) throws IOException {      //oeffnet bestehendes Abbild, ein vollstaendiges Journal wird zuvor nachgetragen
+        ByteBuffer header = ByteBuffer.allocate(32);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while(header.hasRemaining() && channel.read(header) >= 0);
+        }
+        header.flip();
+        if(header.remaining() < 32 || header.getLong() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("No checkpoint in " + file);
+        }
+        Checkpoint checkpoint = new Checkpoint(file, header.getInt(), header.getInt(), header.getInt(), header.getLong(), true);
+        checkpoint.applyJournal();
+        return checkpoint;
+    }
+
+    private static Path getJournalPath(Path file){
+        return Paths.get(file + ".journal");
+    }
+
+    void attach(MemoryManager memoryManager, SegmentHeader[] segmentlist, boolean dirty){     //beginnt Verfolgung der Schreibzugriffe
+        this.memoryManager = memoryManager;
+        this.segmentlist = segmentlist;
+        segmentstride = segmentlist[0].endaddress + 1;
+        dirtypages = new AtomicLongArray[segments];
+        int words = (int) ((((segmentstride - 1) >>> PAGE_SHIFT) >>> 6) + 1);
+        pages = new long[words];
+        for(int i = 0; i < segments; i++){
+            dirtypages[i] = new AtomicLongArray(words);
+            if(dirty) for(int w = 0; w < words; w++) dirtypages[i].set(w, -1L);    //neues Abbild enthaelt noch keine Daten
+        }
+    }
+
+    public void markDirty(long address, int length){
+        if(length <= 0) return;
+        int segment = (int) Math.min(address / segmentstride, segments - 1);
+        long offset = address - segment * segmentstride;
+        AtomicLongArray bitmap = dirtypages[segment];
+        for(long page = offset >>> PAGE_SHIFT; page <= (offset + length - 1) >>> PAGE_SHIFT; page++){
+            int word = (int) (page >>> 6);
+            long bit = 1L << page;
+            if((bitmap.get(word) & bit) == 0) bitmap.getAndAccumulate(word, bit, (old, mark) -> old | mark);   //atomarer Zugriff nur beim ersten Schreiben einer Seite
+        }
+    }
+
+    public synchronized long write() throws IOException {              //schreibt veraenderte Bereiche aller Segmente, liefert Anzahl geschriebener Bytes
+        long written = 0;
+        ranges = 0;
+        journal.truncate(0);
+        journal.position(0);
+        try {
+            for(int i = 0; i < segments; i++){
+                SegmentHeader segment = segmentlist[i];
+                long stamp = memoryManager.lockForCheckpoint(segment);  //Schreibzugriffe auf das Segment warten, bis es gesichert ist
+                try {
+                    AtomicLongArray bitmap = dirtypages[i];
+                    for(int w = 0; w < bitmap.length(); w++) pages[w] = bitmap.getAndSet(w, 0);   //Bits werden vor dem Kopieren entfernt,
+                    long start = -1;                                                                 //Feldzugriffe ohne Sperre markieren danach erneut
+                    for(int page = 0; page < pages.length * 64; page++){        //benachbarte Seiten werden zu einem Bereich zusammengefasst
+                        if(start < 0 && (page & 63) == 0 && pages[page >>> 6] == 0) {
+                            page += 63;                                 //unveraenderte Woerter werden uebersprungen
+                            continue;
+                        }
+                        boolean dirty = (pages[page >>> 6] & (1L << page)) != 0;
+                        if(dirty && start < 0) start = segment.startaddress + ((long) page << PAGE_SHIFT);
+                        if(!dirty && start >= 0) {
+                            written += writeRange(start, segment.startaddress + ((long) page << PAGE_SHIFT), segment);
+                            start = -1;
+                        }
+                    }
+                    if(start >= 0) {
+                        written += writeRange(start, segment.endaddress + 1, segment);
+                    }
+                } finally {
+                    segment.lock.unlockRead(stamp);
+                }
+            }
+            buffer.clear();
+            buffer.putLong(-1).putLong(ranges).flip();                  //Abschluss macht das Journal gueltig
+            writeBuffer();
+            journal.force(false);
+        } catch (IOException e) {
+            for(AtomicLongArray bitmap : dirtypages) {                  //Bereiche werden beim naechsten Checkpoint erneut geschrieben
+                for(int w = 0; w < bitmap.length(); w++) bitmap.set(w, -1L);
+            }
+            throw e;
+        }
+        applyJournal();
+        return written;
+    }
+
+    private long writeRange(long start, long end, SegmentHeader segment) throws IOException {   //kopiert Bereich des Segments in das Journal
+        end = Math.min(end, segment.endaddress + 1);
+        if(end <= start) return 0;
+        buffer.clear();
+        buffer.putLong(start).putLong(end - start).flip();
+        writeBuffer();
+        ranges++;
+        for(long address = start; address < end; address += BUFFER_SIZE){
+            buffer.clear();
+            memoryManager.copyToBuffer(address, buffer, (int) Math.min(BUFFER_SIZE, end - address));
+            buffer.flip();
+            writeBuffer();
+        }
+        return end - start;
+    }
+
+    private void writeBuffer() throws IOException {
+        while(buffer.hasRemaining()) journal.write(buffer);
+    }
+
+    private void applyJournal() throws IOException {                    //traegt ein vollstaendiges Journal in das Abbild ein
+        long size = journal.size();
+        long position = 0;
+        ByteBuffer record = ByteBuffer.allocate(16);
+        while(true) {                                                   //prueft zuerst, ob das Journal abgeschlossen wurde
+            if(position + 16 > size) {
+                journal.truncate(0);                                    //unvollstaendiges Journal wird verworfen
+                return;
+            }
+            record.clear();
+            journal.read(record, position);
+            long address = record.getLong(0);
+            long length = record.getLong(8);
+            position += 16;
+            if(address == -1) break;
+            if(length < 0) {
+                journal.truncate(0);
+                return;
+            }
+            position += length;
+        }
+        position = 0;
+        while(true) {
+            record.clear();
+            journal.read(record, position);
+            long address = record.getLong(0);
+            long length = record.getLong(8);
+            position += 16;
+            if(address == -1) break;
+            for(long copied = 0; copied < length; ){
+                copied += journal.transferTo(position + copied, length - copied, snapshot.position(HEADER_SIZE + address + copied));
+            }
+            position += length;
+        }
+        snapshot.force(false);
+        if(!complete) {                                                 //Kopf wird erst nach dem ersten vollstaendigen Checkpoint geschrieben
+            ByteBuffer header = ByteBuffer.allocate(32);
+            header.putLong(MAGIC).putInt(VERSION).putInt(layout).putInt(segments).putInt(initblocksize).putLong(heapsize).flip();
+            while(header.hasRemaining()) snapshot.write(header, header.position());
+            snapshot.force(false);
+            complete = true;
+        }
+        journal.truncate(0);
+        journal.force(false);
+    }
+
+    public OffHeapAccess loadHeap(OffHeapAccess heap) throws IOException {     //liest das Abbild in den OffHeap
+        byte[] chunk = new byte[BUFFER_SIZE];
+        for(long position = 0; position < heapsize; ){
+            ByteBuffer target = ByteBuffer.wrap(chunk, 0, (int) Math.min(BUFFER_SIZE, heapsize - position));
+            int read = snapshot.read(target, HEADER_SIZE + position);
+            if(read < 0) throw new IOException("Checkpoint is truncated");
+            heap.copyFromArray(chunk, 0, heap.getStartAddress() + position, read);
+            position += read;
+        }
+        return heap;
+    }
+
+    public void close() throws IOException {
+        snapshot.close();
+        journal.close();
+    }
+
+}
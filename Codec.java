@@ -0,0 +1,15 @@
+// Schnittstelle zum Kodieren von Objekten direkt in den OffHeap, ersetzt die Serialisierung ueber ObjectOutputStream.
+// Die Groesse muss vor dem Kodieren bekannt sein, damit der Block passend reserviert werden kann. encode schreibt
+// genau getEncodedSize Bytes ab der uebergebenen Adresse, decode liest das Objekt aus size Bytes ab der Adresse.
+// Adressen sind absolute Adressen fuer den uebergebenen OffHeapAccess.
+
+
+public interface Codec<T> {
+
+    int getEncodedSize(T object);
+
+    void encode(T object, OffHeapAccess target, long address);
+
+    T decode(OffHeapAccess source, long address, int size);
+
+}
@@ -0,0 +1,89 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToLongFunction;
+
+// Flat Combining fuer die Operationen eines Segments.
+// Ein Thread legt seine Operation (Allokation oder Freigabe) in einem Platz des Segments ab und versucht danach die
+// Schreibsperre zu holen. Wer sie erhaelt, fuehrt alle abgelegten Operationen in einem Durchgang aus und traegt die
+// Ergebnisse ein. Die uebrigen Threads warten kurz aktiv und legen sich danach schlafen, bis der Sperrinhaber sie weckt
+// oder sie es erneut selbst versuchen. Belegen zwei Threads denselben Platz, wartet der zweite, bis der Platz wieder frei
+// ist oder er selbst die Sperre erhaelt.
+
+
+public class Combiner {
+
+    public static final int SLOTS = 64;                 //Zweierpotenz
+    private static final int SPINS_BEFORE_PARK = 64;
+    private static final long PARK_NANOS = 50000;      //obere Grenze, falls die Sperre ohne Combiner gehalten wird
+
+    private static final AtomicInteger slotcounter = new AtomicInteger();
+    private static final ThreadLocal<Request> requests = ThreadLocal.withInitial(Request::new);    //ein wiederverwendeter Auftrag je Thread
+
+    private final AtomicReferenceArray<Request> slots = new AtomicReferenceArray<>(SLOTS);
+
+    private static final class Request {
+        final int index = slotcounter.getAndIncrement() & (SLOTS - 1);     //fester Platz je Thread
+        final Thread waiter = Thread.currentThread();
+        ToLongFunction<SegmentHeader> operation;
+        long result;
+        Throwable failure;
+        volatile boolean done;                          //wird nach Ergebnis bzw. Fehler gesetzt
+    }
+
+    public long execute(SegmentHeader segment, ToLongFunction<SegmentHeader> operation){    //fuehrt Operation unter der Schreibsperre aus, ggf. durch einen anderen Thread
+        Request request = requests.get();              //vorheriger Auftrag ist abgeschlossen und liegt in keinem Platz mehr
+        request.operation = operation;
+        request.failure = null;
+        request.done = false;
+        int index = request.index;
+        boolean published = false;
+        int spins = 0;
+        while(true) {
+            if(!published) {
+                published = slots.compareAndSet(index, null, request);
+            } else if(request.done) {
+                break;
+            }
+            long stamp = segment.lock.tryWriteLock();
+            if(stamp != 0) {
+                try {
+                    if(!published) run(segment, request);   //Platz ist belegt, eigene Operation wird direkt ausgefuehrt
+                    combine(segment);
+                } finally {
+                    segment.lock.unlockWrite(stamp);
+                }
+                break;
+            }
+            if(++spins < SPINS_BEFORE_PARK) Thread.onSpinWait();
+            else LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        request.operation = null;                       //Lambda nicht ueber den Aufruf hinaus festhalten
+        Throwable failure = request.failure;
+        if(failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if(failure instanceof Error) throw (Error) failure;
+        if(failure != null) throw new IllegalStateException(failure);
+        return request.result;
+    }
+
+    private void combine(SegmentHeader segment){        //fuehrt alle abgelegten Operationen aus, Aufrufer haelt Schreibsperre
+        for(int i = 0; i < SLOTS; i++){
+            Request request = slots.get(i);
+            if(request == null) continue;
+            slots.set(i, null);
+            run(segment, request);
+        }
+    }
+
+    private void run(SegmentHeader segment, Request request){
+        try {
+            request.result = request.operation.applyAsLong(segment);
+        } catch (Throwable e) {                         //auch Errors werden an den wartenden Thread weitergegeben
+            request.failure = e;
+        } finally {
+            request.done = true;
+            if(request.waiter != Thread.currentThread()) LockSupport.unpark(request.waiter);
+        }
+    }
+
+}
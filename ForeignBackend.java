@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+
+// Laedt die Klassen des FFM-Backends (ForeignOffHeap, MappedOffHeap, Trimmer) ueber Reflection.
+// Sie liegen im Verzeichnis foreign und benoetigen JDK 22 (mit JDK 21 --enable-preview). Der uebrige Code verweist nicht
+// direkt auf sie und laesst sich daher auch ohne foreign mit aelteren JDKs uebersetzen, das Unsafe-Backend bleibt dann
+// vollstaendig nutzbar. Fehlt das Backend, liefern die Fabrikmethoden eine UnsupportedOperationException.
+
+
+public class ForeignBackend {
+
+    private static final Class<?> OFFHEAP = load("ForeignOffHeap");
+    private static final Class<?> MAPPED = load("MappedOffHeap");
+
+    private static Class<?> load(String name){
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException | LinkageError e) {        //nicht mit uebersetzt bzw. ohne --enable-preview gestartet
+            return null;
+        }
+    }
+
+    private static final class Trim {                          //erst beim ersten Trimmen aufgeloest, da der native Aufruf eine Warnung ausloest
+        static final MethodHandle RELEASE = findTrim();
+    }
+
+    private static MethodHandle findTrim(){
+        Class<?> trimmer = load("Trimmer");
+        if(trimmer == null) return null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            boolean available = (boolean) lookup.findStatic(trimmer, "isAvailable", MethodType.methodType(boolean.class)).invokeExact();
+            return available ? lookup.findStatic(trimmer, "release", MethodType.methodType(long.class, long.class, long.class)) : null;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    public static boolean isAvailable(){
+        return OFFHEAP != null;
+    }
+
+    public static boolean isTrimAvailable(){
+        return Trim.RELEASE != null;
+    }
+
+    public static OffHeapAccess createOffHeap(long size){
+        if(OFFHEAP == null) throw new UnsupportedOperationException("FFM backend is not available");
+        try {
+            return (OffHeapAccess) OFFHEAP.getConstructor(long.class).newInstance(size);
+        } catch (InvocationTargetException e) {
+            throw rethrow(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("FFM backend is not available", e);
+        }
+    }
+
+    public static PersistentHeap openMapped(Path path, long size, int segments) throws IOException {
+        if(MAPPED == null) throw new UnsupportedOperationException("FFM backend is not available");
+        try {
+            return (PersistentHeap) MAPPED.getMethod("open", Path.class, long.class, int.class).invoke(null, path, size, segments);
+        } catch (InvocationTargetException e) {
+            if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw rethrow(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("FFM backend is not available", e);
+        }
+    }
+
+    public static long trim(long start, long end){              //gibt alle ganzen Seiten zwischen den physischen Adressen frei, liefert freigegebene Bytes
+        if(Trim.RELEASE == null) return 0;
+        try {
+            return (long) Trim.RELEASE.invokeExact(start, end);
+        } catch (Throwable e) {
+            return 0;
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause){
+        if(cause instanceof RuntimeException) return (RuntimeException) cause;
+        if(cause instanceof Error) throw (Error) cause;
+        return new IllegalStateException(cause);
+    }
+
+}
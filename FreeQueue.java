@@ -0,0 +1,92 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Begrenzte Warteschlange freigegebener Bloecke eines Segments.
+// Beliebig viele Threads legen Adressen ohne Sperre ab, indem sie per CAS einen Platz reservieren und die Adresse
+// danach eintragen. Geleert wird nur von einem Thread, der die Schreibsperre des Segments haelt. Ein Platz mit 0
+// wurde zwar reserviert, aber noch nicht beschrieben, das Leeren endet dann vor diesem Platz. Ist die Warteschlange voll,
+// koennen Adressen ohne Sperre in eine unbegrenzte Ueberlaufliste gelegt werden, die beim Leeren mit entnommen wird.
+
+
+public class FreeQueue {
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();     //naechster zu reservierender Platz
+    private volatile long head;                           //naechster zu lesender Platz, nur vom leerenden Thread geschrieben
+    private final AtomicReference<Overflow> overflow = new AtomicReference<>();     //Stapel, nur bei voller Warteschlange verwendet
+
+    private static final class Overflow {
+        final long address;
+        Overflow next;
+
+        Overflow(long address) {
+            this.address = address;
+        }
+    }
+
+    public FreeQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;     //auf Zweierpotenz aufgerundet
+        slots = new AtomicLongArray(size);
+        mask = size - 1;
+    }
+
+    public boolean offer(long address){                   //liefert false, falls die Warteschlange voll ist
+        while(true) {
+            long t = tail.get();
+            if(t - head >= slots.length()) return false;
+            if(tail.compareAndSet(t, t + 1)) {
+                slots.set((int) (t & mask), address);
+                return true;
+            }
+        }
+    }
+
+    public void spill(long address){                      //legt Adresse in die Ueberlaufliste, wartet nie
+        Overflow node = new Overflow(address);
+        do {
+            node.next = overflow.get();
+        } while(!overflow.compareAndSet(node.next, node));
+    }
+
+    public int drain(long[] destination){                 //entnimmt bis zu destination.length Adressen, Aufrufer haelt die Schreibsperre
+        int count = 0;
+        long h = head;
+        while(count < destination.length && h < tail.get()) {
+            int slot = (int) (h & mask);
+            long address = slots.get(slot);
+            if(address == 0) break;                       //Platz ist reserviert, die Adresse aber noch nicht eingetragen
+            slots.set(slot, 0);
+            destination[count++] = address;
+            h++;
+        }
+        head = h;
+        if(count < destination.length && overflow.get() != null) {
+            Overflow node = overflow.getAndSet(null);
+            while(node != null && count < destination.length) {
+                destination[count++] = node.address;
+                node = node.next;
+            }
+            while(node != null) {                         //was nicht mehr passt, wird zurueckgelegt
+                Overflow next = node.next;
+                spill(node.address);
+                node = next;
+            }
+        }
+        return count;
+    }
+
+    public int size(){                                    //ohne Ueberlaufliste
+        return (int) (tail.get() - head);
+    }
+
+    public boolean isEmpty(){
+        return size() == 0 && overflow.get() == null;
+    }
+
+    public int capacity(){
+        return slots.length();
+    }
+
+}
@@ -0,0 +1,48 @@
+// Tabelle fester Groesse im OffHeap, die stabile Handles auf die aktuelle Adresse eines Blocks abbildet.
+// Ein Eintrag wird nur unter der Schreibsperre des Segments geaendert, in dem der Block liegt. Da der Kompaktierer
+// Bloecke nur innerhalb ihres Segments verschiebt, schuetzt die Sperre dieses Segments den Eintrag fuer die gesamte
+// Lebensdauer des Handles. Freie Eintraege bilden eine Liste, sie enthalten -(Index des naechsten freien Eintrags + 1).
+
+
+public class HandleTable {
+
+    private final OffHeapAccess table;
+    private final int capacity;
+    private int freehead;               //erster freier Eintrag, capacity falls alle Eintraege vergeben sind
+
+    public HandleTable(OffHeapAccess table) {
+        this.table = table;
+        this.capacity = (int) Math.min(table.getSize() / Long.BYTES, Integer.MAX_VALUE);
+        for(int i = 0; i < capacity; i++) set(i, -(i + 2));     //verkettet alle Eintraege zur Liste freier Eintraege
+        freehead = 0;
+    }
+
+    public synchronized int acquire(){                          //liefert freien Eintrag oder -1
+        if(freehead == capacity) return -1;
+        int index = freehead;
+        freehead = (int) (-get(index) - 1);
+        return index;
+    }
+
+    public synchronized void release(int index){
+        set(index, -(freehead + 1));
+        freehead = index;
+    }
+
+    public boolean isHandle(long index){                        //false fuer Indizes ausserhalb der Tabelle
+        return index >= 0 && index < capacity;
+    }
+
+    public long get(int index){                                 //Adresse des Blocks, negativ fuer freie Eintraege
+        return table.readLong(table.getStartAddress() + (long) index * Long.BYTES);
+    }
+
+    public void set(int index, long address){
+        table.writeLong(table.getStartAddress() + (long) index * Long.BYTES, address);
+    }
+
+    public void free(){
+        table.freeMemory(table.getStartAddress());
+    }
+
+}
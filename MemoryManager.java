@@ -1,65 +1,247 @@
 import java.io.*;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
 
 public class MemoryManager {
 
     public static final int ADDRESS_SIZE = 5;
+    public static final int LAYOUT_V1 = 1;         //Laengenfelder 1-3B und 5B Adressen, Groesse im Marker kodiert
+    public static final int LAYOUT_V2 = 2;         //Laengenfelder 4B und Adressen 8B, jeweils mit einem Zugriff gelesen
+    public static final int BACKEND_UNSAFE = 1;    //Zugriff ueber sun.misc.Unsafe
+    public static final int BACKEND_FOREIGN = 2;   //Zugriff ueber die Foreign Function & Memory API
     public static final int MAX_BLOCK_SIZE = 16000000;
+    public static final int MIN_TRIM_SIZE = 65536;                               //kleinere freie Bloecke werden nicht getrimmt
+    private static final long TRIM_MARK = 0x5452494D4D454421L;                   //mit der Blockadresse verknuepft hinter den Zeigern getrimmter Bloecke
+    public static final int GENERATION_TAG_SIZE = 2;                             //Generation belegter Bloecke vor den Daten, falls aktiviert
+    public static final int GENERATION_SHIFT = 48;                              //Generation steht in den oberen 16 Bit einer Adresse
+    public static final long ADDRESS_MASK = (1L << GENERATION_SHIFT) - 1;
+    public static final long VERSION_WRITERS = 0xFFFF;                          //untere Bits eines Versionsworts zaehlen laufende Schreibzugriffe
+    public static final long VERSION_SEQUENCE = VERSION_WRITERS + 1;            //obere Bits zaehlen abgeschlossene Schreibzugriffe
+    public static final int NEIGHBOUR_PROBES = 2;                                //Anzahl Nachbarsegmente, die bei belegtem Heimsegment versucht werden
+    public static final int DEFAULT_VERSION_STRIPES = 64;                        //Versionsworte je Segment, falls Epochen sie selbst aktivieren
+    public static final int RECLAIM_BATCH = 64;                                  //zurueckgestellte Bloecke, ab denen ein Segment die Leser prueft
+    private static final Codec<byte[]> BYTE_ARRAY_CODEC = new ByteArrayCodec();
+
+
+
+    private OffHeapAccess[] regions;                                            //Speicherbereiche, Bereich i beginnt bei virtueller Adresse i << regionshift
+    private long[] regionoffsets;                                               //Offset von virtuellen zu physischen Adressen je Bereich
+    private int regioncount;
+    private final int regionshift;
+    private final long offheapsize;                                             //Groesse eines Bereichs
+    private final int segments;                                                 //Anzahl Segmente je Bereich
+    private final long segmentstride;                                           //Abstand der Segmentanfaenge innerhalb eines Bereichs
+    private final int initblocksize;
+    private final int layout;
+    private final int addresssize;                                              //Groesse der Adressfelder freier Bloecke
+    private final int minfreeblocksize;                                         //kleinster Block, der in eine Freispeicherliste passt
+    private int tagsize;                                                        //GENERATION_TAG_SIZE, falls Adressen eine Generation tragen, sonst 0
+    private int versionstripes;                                                 //Anzahl Versionsworte je Segment, 0 falls Leser die Segmentsperre validieren
+    public volatile SegmentHeader[] segmentlist;                                //wird beim Wachsen des Heaps durch eine laengere Liste ersetzt
+    private ThreadLocal<ThreadCache> threadcaches;                              //null, solange keine Thread-Caches verwendet werden
+    private final Queue<ThreadCache> threadcacheregistry = new ConcurrentLinkedQueue<>();     //alle Caches, um Bloecke beendeter Threads zurueckzuholen
+    private SlabAllocator slaballocator;                                        //null, solange keine Slabs verwendet werden
+    private final PersistentHeap mappedheap;                                    //null, falls der Heap nicht in einer Datei liegt
+    private Checkpoint checkpoint;                                              //null, solange keine Checkpoints geschrieben werden
+    private ScheduledExecutorService trimexecutor;                              //null, solange nicht im Hintergrund getrimmt wird
+    private boolean trimmarks;                                                  //true, sobald trim() Bloecke markiert haben kann
+    private ScheduledExecutorService coalescerexecutor;                         //null, solange Freigaben sofort zusammengefasst werden
+    private int deferredcapacity;                                               //Laenge der Warteschlangen verzoegerter Freigaben je Segment
+    private boolean remotefrees;                                                //Freigaben in fremde Segmente gehen in deren Warteschlange
+    private ReaderEpochs epochs;                                                //null, solange Bloecke sofort wiederverwendet werden
+    private boolean flatcombining;                                              //Allokationen und Freigaben werden vom Sperrinhaber gesammelt ausgefuehrt
+    private HandleTable handletable;                                            //null, solange keine Handles verwendet werden
+    private ScheduledExecutorService compactorexecutor;                         //null, solange nicht im Hintergrund kompaktiert wird
+    private final AtomicInteger homecounter = new AtomicInteger();
+    private final ThreadLocal<int[]> homesegment = ThreadLocal.withInitial(     //Heimsegment des Threads, wird reihum vergeben
+            () -> new int[]{Math.floorMod(homecounter.getAndIncrement(), segmentlist.length)});
+
+    public MemoryManager(long size, int segments, int initblocksize, int layout, int backend) throws NoSuchFieldException, IllegalAccessException, InterruptedException {
+        this(createOffHeap(getHeapSize(size, segments, initblocksize), backend), segments, initblocksize, layout, null, null);
+    }
 
+    public MemoryManager(Path file, long size, int segments, int initblocksize, int layout) throws IOException, InterruptedException {
+        this(ForeignBackend.openMapped(file, getHeapSize(size, segments, initblocksize), segments), segments, initblocksize, layout);
+    }   //oeffnet persistenten Heap in einer Datei, bei bestehender Datei gelten deren Parameter
 
+    private MemoryManager(PersistentHeap heap, int segments, int initblocksize, int layout) throws InterruptedException {
+        this(heap, heap.isInitialized() ? heap.readSegments() : segments,
+                heap.isInitialized() ? heap.readInitBlockSize() : initblocksize,
+                heap.isInitialized() ? heap.readLayout() : layout, heap, null);
+    }
 
-    private final OffHeapAccess offHeapAccess;
-    private final long addressoffset;
-    private final long offheapsize;
-    private final int segments;
-    private final int initblocksize;
-    public SegmentHeader[] segmentlist;
+    public MemoryManager(Path snapshot, int backend) throws IOException, NoSuchFieldException, IllegalAccessException, InterruptedException {
+        this(Checkpoint.open(snapshot), backend);
+    }   //stellt den Heap aus dem letzten Checkpoint wieder her, weitere Checkpoints werden in dasselbe Abbild geschrieben
 
-    public MemoryManager(long size, int segments, int initblocksize) throws NoSuchFieldException, IllegalAccessException, InterruptedException {
+    private MemoryManager(Checkpoint checkpoint, int backend) throws IOException, NoSuchFieldException, IllegalAccessException, InterruptedException {
+        this(checkpoint.loadHeap(createOffHeap(checkpoint.heapsize, backend)), checkpoint.segments, checkpoint.initblocksize,
+                checkpoint.layout, null, checkpoint);
+    }
+
+    private MemoryManager(OffHeapAccess offHeapAccess, int segments, int initblocksize, int layout, PersistentHeap mappedheap, Checkpoint restored) throws InterruptedException {
         this.initblocksize = Math.min(initblocksize, MAX_BLOCK_SIZE);           //legt die Groesse der Blocks bei der Initialisierung fest
-        this.offheapsize = Math.max(size, segments * (initblocksize + 2));
-        this.offHeapAccess = new OffHeap(offheapsize);
-        addressoffset = ((OffHeap) offHeapAccess).startaddress;                 //Offset fuer virtuelle Adressen
-        segmentlist = new SegmentHeader[segments];
+        this.offheapsize = offHeapAccess.getSize();
+        this.layout = layout;
+        this.addresssize = layout == LAYOUT_V2 ? Long.BYTES : ADDRESS_SIZE;
+        this.minfreeblocksize = 2 * (layout == LAYOUT_V2 ? Integer.BYTES : 1) + 2 * addresssize;
+        this.mappedheap = mappedheap;
+        regions = new OffHeapAccess[]{offHeapAccess};
+        regionoffsets = new long[]{offHeapAccess.getStartAddress()};           //Offset fuer virtuelle Adressen
+        regioncount = 1;
+        regionshift = 64 - Long.numberOfLeadingZeros(offheapsize - 1);
         this.segments = segments;
-        createSegments(segments);
+        this.segmentstride = offheapsize / segments;
+        SegmentHeader[] list = new SegmentHeader[segments];
+        if(mappedheap != null && mappedheap.isInitialized()) {
+            if(mappedheap.isCleanShutdown()) {                                  //bestehender Heap wird nur aus dem Kopfbereich geladen
+                for(int i = 0; i < segments; i++) list[i] = mappedheap.readSegment(i);
+            } else {                                                            //Anker koennen veraltet sein, Listen werden aus den Bloecken aufgebaut
+                System.out.println("Heap file was not closed cleanly, rebuilding free lists");
+                createSegments(list, 0, 0, true);
+            }
+            segmentlist = list;
+            mappedheap.writeCleanShutdown(false);
+        } else if(restored != null) {                                           //Heap liegt bereits im OffHeap, nur die Segmentkoepfe fehlen
+            createSegments(list, 0, 0, true);
+            segmentlist = list;
+            restored.attach(this, segmentlist, false);
+            checkpoint = restored;
+        } else {
+            createSegments(list, 0, 0, false);
+            segmentlist = list;
+            if(mappedheap != null) {
+                mappedheap.writeParameters(layout, segments, this.initblocksize);
+                sync();
+            }
+        }
+    }
+
+    public MemoryManager(long size, int segments, int initblocksize, int layout) throws NoSuchFieldException, IllegalAccessException, InterruptedException {
+        this(size, segments, initblocksize, layout, BACKEND_UNSAFE);
+    }
+
+    public MemoryManager(long size, int segments, int initblocksize) throws NoSuchFieldException, IllegalAccessException, InterruptedException {
+        this(size, segments, initblocksize, LAYOUT_V1);
     }
 
     public MemoryManager(long size, int segments) throws NoSuchFieldException, IllegalAccessException, InterruptedException {
-        this.offheapsize = Math.max(size, segments * (MAX_BLOCK_SIZE + 2));
-        this.initblocksize = MAX_BLOCK_SIZE;
-        this.offHeapAccess = new OffHeap(offheapsize);
-        addressoffset = ((OffHeap) offHeapAccess).startaddress;
-        segmentlist = new SegmentHeader[segments];
-        this.segments = segments;
-        createSegments(segments);
+        this(size, segments, MAX_BLOCK_SIZE);
     }
 
-    public void createSegments(int segments) throws InterruptedException {
-        long segmentsize = offheapsize / segments;
+    private static long getHeapSize(long size, int segments, int initblocksize){
+        return Math.max(size, segments * (initblocksize + 2));
+    }
+
+    private static OffHeapAccess createOffHeap(long size, int backend) throws NoSuchFieldException, IllegalAccessException {
+        return backend == BACKEND_FOREIGN ? ForeignBackend.createOffHeap(size) : new OffHeap(size);
+    }
+
+    private OffHeapAccess createRegion(long size) throws NoSuchFieldException, IllegalAccessException {     //weiterer OffHeap mit dem Backend des ersten Bereichs
+        return regions[0] instanceof OffHeap ? new OffHeap(size) : ForeignBackend.createOffHeap(size);
+    }
+
+    private void createSegments(SegmentHeader[] list, int first, long regionstart, boolean restore) throws InterruptedException {
+        long segmentsize = segmentstride - 1;                           //letztes Byte jedes Segments nimmt den abschliessenden Marker auf
         ExecutorService es = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        long segmentstart = 0;
+        long segmentstart = regionstart;
 
-        for(int i = 0; i < segments; i++){
+        for(int i = first; i < first + segments; i++){
             SegmentHeader segment = new SegmentHeader(segmentstart, segmentsize);
-            segmentstart += (segmentsize + 1);
-            segmentlist[i] = segment;
-            es.submit(() -> initSegment(segment));              //startet parallele Initialisierung der Segmente
+            segmentstart += segmentstride;
+            list[i] = segment;
+            if(deferredcapacity > 0) segment.deferredfrees = new FreeQueue(deferredcapacity);
+            if(versionstripes > 0) segment.enableVersions(versionstripes);
+            if(flatcombining) segment.combiner = new Combiner();
+            if(restore) {
+                es.submit(() -> rebuildFreeLists(segment));     //Freispeicherlisten werden aus dem wiederhergestellten Heap aufgebaut
+            } else {
+                es.submit(() -> initSegment(segment));          //startet parallele Initialisierung der Segmente
+            }
         }
         es.shutdown();
         es.awaitTermination(1, TimeUnit.HOURS);
     }
 
+    public void enableGrowth(long maxheapsize){                //Heap waechst bei Bedarf um Bereiche der Anfangsgroesse bis maxheapsize, vor der ersten Allokation aufrufen
+        if(mappedheap != null || checkpoint != null) {         //Abbild und Heapdatei beschreiben genau einen Bereich
+            System.out.println("Growth is not supported for persistent heaps or with checkpoints");
+            return;
+        }
+        long maxregions = Math.max(1, maxheapsize / offheapsize);
+        if(addresssize == ADDRESS_SIZE) maxregions = Math.min(maxregions, 1L << (8 * ADDRESS_SIZE - regionshift));   //Adressen muessen in 5B passen
+        maxregions = Math.min(maxregions, Integer.MAX_VALUE / segments);
+        if(tagsize > 0) maxregions = Math.min(maxregions, (ADDRESS_MASK + 1) >>> regionshift);      //Generation belegt die oberen 16 Bit
+        regions = Arrays.copyOf(regions, (int) maxregions);
+        regionoffsets = Arrays.copyOf(regionoffsets, (int) maxregions);
+    }
+
+    private synchronized boolean addRegion(SegmentHeader[] current){      //fuegt Bereich hinzu, liefert false falls die Obergrenze erreicht ist
+        if(segmentlist != current) return true;                          //anderer Thread hat den Heap bereits vergroessert
+        if(regioncount == regions.length) return false;
+        OffHeapAccess heap;
+        try {
+            heap = createRegion(offheapsize);
+        } catch (ReflectiveOperationException | RuntimeException | OutOfMemoryError e) {
+            System.out.println("Region could not be allocated");
+            return false;
+        }
+        long regionstart = (long) regioncount << regionshift;
+        regions[regioncount] = heap;
+        regionoffsets[regioncount] = heap.getStartAddress() - regionstart;
+        SegmentHeader[] list = Arrays.copyOf(current, current.length + segments);
+        try {
+            createSegments(list, current.length, regionstart, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            heap.freeMemory(heap.getStartAddress());
+            return false;
+        }
+        regioncount++;
+        segmentlist = list;                                 //neue Segmente werden erst nach ihrer Initialisierung sichtbar
+        return true;
+    }
+
+    private void rebuildFreeLists(SegmentHeader segment){       //durchlaeuft alle Bloecke des Segments und verkettet die freien Bloecke neu
+        long stamp = segment.lock.writeLock();
+        try {
+            long address = segment.startaddress + 1;
+            while(address < segment.endaddress - 1) {
+                long nextblock = getNextBlock(address);
+                if(nextblock <= address || nextblock - 1 > segment.endaddress) break;
+                int marker = readMarkerLowerBits(address - 1);
+                if(isUsedMarker(marker)) {
+                    segment.usedspace.add(getBlockSize(address));
+                } else if(isListedFreeBlock(address)) {
+                    cutFreeBlock(segment, address, getBlockSize(address));
+                }
+                address = nextblock;
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
     private void initSegment(SegmentHeader segment){
         long stamp = segment.lock.writeLock();
         try {
             long address = segment.startaddress;
             //Pointer für Verkettung der freien Bloecke
             long previousblock = 0;
-            long nextblock = address + (initblocksize + 2);
+            long nextblock;
 
             int list = segment.findExactBlockList(initblocksize);
             segment.setListAnchor(list, address + 1);  //setzt Anker fuer Freispeicherliste
@@ -68,13 +250,13 @@ public class MemoryManager {
             while (segment.endaddress - address >= initblocksize + 1) {    //erstellt freie Bloecke maximaler Groesse und verkettet sie
                 writeMarkerLowerBits(address, markervalue);
                 address++;
-                createFreeBlock(address, initblocksize, nextblock, previousblock);
-                previousblock = address;
-                if(segment.endaddress - address >= (initblocksize + 1) * 2){    //wenn der vorletzte Block erreicht wird, wird der naechste Block auf 0 gesetzt
+                if(segment.endaddress - (address + initblocksize) >= initblocksize + 1){    //beim letzten Block wird der naechste Block auf 0 gesetzt
                     nextblock = address + (initblocksize + 1);
                 } else {
                     nextblock = 0;
                 }
+                createFreeBlock(address, initblocksize, nextblock, previousblock);
+                previousblock = address;
                 address += initblocksize;
                 writeMarkerUpperBits(address, markervalue);
             }
@@ -84,7 +266,7 @@ public class MemoryManager {
                 byte remainingmarker = getFreeBlockMarkerValue(remainingsize);
                 if(remainingmarker == 15){                                      //uebriger Speicher ist 1B gross
                     writeMarkerLowerBits(address, remainingmarker);
-                    writeMarkerUpperBits(address + 1, remainingmarker);
+                    writeMarkerUpperBits(address + 2, remainingmarker);
                 }
                 else if(remainingmarker == 0){                                  //uebriger Speicher ist < 12B gross
                     writeMarkerLowerBits(address, remainingmarker);
@@ -111,221 +293,956 @@ public class MemoryManager {
 
 
 
-    public long allocate(Serializable object) throws IOException {
-        byte[] objectbytearray = serialize(object);                 //serialisiert das Objekt in ein Byte Array
-        byte usedmarkervalue = getUsedBlockMarkerValue(objectbytearray.length);       //Markerwert des allozierten Speichers
-        int lengthfieldsize = usedmarkervalue - 8;  //berechnet Laengenfeld fuer belegten Block
-        int size = objectbytearray.length + 2 * lengthfieldsize;
-        long address;
+    public void enableGenerationTags(){                        //Adressen tragen die Generation ihres Blocks, vor der ersten Allokation aufrufen
+        if(slaballocator != null || mappedheap != null || checkpoint != null) {     //Slots haben keinen Platz fuer die Generation
+            System.out.println("Generation tags are not supported with slabs or persistent heaps");
+            return;
+        }
+        if(((long) regions.length << regionshift) - 1 > ADDRESS_MASK) {
+            System.out.println("Generation tags are not supported for heaps above " + ADDRESS_MASK + " bytes");
+            return;
+        }
+        tagsize = GENERATION_TAG_SIZE;
+    }
+
+    public void enableBlockVersions(int stripes){              //Leser validieren gegen Versionsworte ihres Blocks statt gegen das Segment, vor der ersten Allokation aufrufen
+        versionstripes = stripes;
+        for(SegmentHeader segment : segmentlist) segment.enableVersions(stripes);
+    }
+
+    public void enableEpochReclamation(){                      //readObject liest ohne Segmentsperre, freigegebene Bloecke werden erst nach aelteren Lesern wiederverwendet, vor der ersten Allokation aufrufen
+        if(mappedheap != null || checkpoint != null) {         //zurueckgestellte Bloecke gingen beim Neustart verloren
+            System.out.println("Epoch reclamation is not supported for persistent heaps");
+            return;
+        }
+        if(threadcaches != null || slaballocator != null) {    //Cache und Slabs vergeben freigegebene Bloecke sofort neu
+            System.out.println("Epoch reclamation is not supported with thread caches or slabs");
+            return;
+        }
+        if(versionstripes == 0) enableBlockVersions(DEFAULT_VERSION_STRIPES);     //gleichzeitige Schreibzugriffe werden weiter ueber die Versionen erkannt
+        epochs = new ReaderEpochs();
+    }
 
-        SegmentHeader segment = findSegment();
+    public void enterEpoch(){                                   //Adressen aus gemeinsam genutzten Strukturen erst danach laden, ihre Bloecke bleiben bis exitEpoch() erhalten
+        if(epochs != null) epochs.enter();
+    }
+
+    public void exitEpoch(){
+        if(epochs != null) epochs.exit();
+    }
+
+    private void retireBlock(SegmentHeader segment, long address){     //stellt Block bis zum Ende aelterer Lesezugriffe zurueck, Aufrufer haelt Schreibsperre
+        if(epochs == null) {
+            freeBlock(segment, address);
+            return;
+        }
+        segment.retire(address, epochs.getEpoch());
+        if(segment.retiredcount >= RECLAIM_BATCH) reclaimRetiredBlocks(segment);
+    }
+
+    private int reclaimRetiredBlocks(SegmentHeader segment){   //gibt Bloecke frei, die kein Leser mehr sieht, Aufrufer haelt Schreibsperre
+        if(epochs == null || segment.retiredcount == 0) return 0;
+        long safe = epochs.getSafeEpoch();
+        int count = 0;
+        while(count < segment.retiredcount && segment.retiredepochs[count] < safe) count++;
+        if(count == 0) return 0;
+        long[] blocks = Arrays.copyOf(segment.retiredblocks, count);
+        System.arraycopy(segment.retiredblocks, count, segment.retiredblocks, 0, segment.retiredcount - count);
+        System.arraycopy(segment.retiredepochs, count, segment.retiredepochs, 0, segment.retiredcount - count);
+        segment.retiredcount -= count;
+        Arrays.sort(blocks);
+        long previous = 0;
+        int released = 0;
+        for(long block : blocks){
+            if(block != previous && isBlockUsed(block)) {      //doppelt freigegebene Bloecke liegen nach dem Sortieren hintereinander
+                beginBlockWrite(segment, block);                //Leser, die den Block erst nach der Freigabe erreicht haben, werden ungueltig
+                freeBlock(segment, block);
+                endBlockWrite(segment, block);
+                released++;
+            } else {
+                System.out.println("No object at this address");
+            }
+            previous = block;
+        }
+        return released;
+    }
+
+    long lockForCheckpoint(SegmentHeader segment){              //liefert Lesestempel, abgelegte Freigaben werden vorher unter der Schreibsperre ausgefuehrt
+        if((segment.deferredfrees == null || segment.deferredfrees.isEmpty()) && segment.retiredcount == 0) return segment.lock.readLock();
         long stamp = segment.lock.writeLock();
-        try {
-            segment.usedspace += size;
-            int blocklist = segment.findFittingBlockList(size);
-            address = segment.getListAnchor(blocklist);             //Suche nach passendem freien Block
-            address = findFittingBlockInList(size, address);
-            while(address == 0){
-                blocklist++;
-                address = findFittingBlockInList(size, segment.getListAnchor(blocklist));
-            }
-            if(address == segment.getListAnchor(blocklist)){        //Falls Block erstes Element der Liste ist wird der Nachfolger neuer Anker
-                long nextfreeblock = getNextFreeBlock(address);
-                if(nextfreeblock != 0) {
-                    int freelengthfieldsize = readMarkerLowerBits(nextfreeblock - 1);
-                    writeAddressField(nextfreeblock + freelengthfieldsize + ADDRESS_SIZE, 0);
+        releasePendingBlocks(segment);                          //spaeter abgelegte Freigaben folgen dem Checkpoint
+        return segment.lock.tryConvertToReadLock(stamp);
+    }
+
+    private int releasePendingBlocks(SegmentHeader segment){   //leert die Warteschlange und gibt zurueckgestellte Bloecke frei, Aufrufer haelt Schreibsperre
+        int drained = drainDeferredFrees(segment);
+        return epochs != null ? reclaimRetiredBlocks(segment) : drained;
+    }
+
+    public void enableFlatCombining(){                         //wartende Threads legen ihre Operation ab, der Inhaber der Segmentsperre fuehrt alle auf einmal aus
+        for(SegmentHeader segment : segmentlist) segment.combiner = new Combiner();
+        flatcombining = true;
+    }
+
+    public void enableThreadCaches(int bincapacity){          //aktiviert Thread-lokale Caches fuer Objekte bis 255B, vor der ersten Allokation aufrufen
+        if(checkpoint != null) {                               //Objekte aus dem Cache werden ohne Segmentsperre beschrieben
+            System.out.println("Thread caches are not supported with checkpoints");
+            return;
+        }
+        if(epochs != null) {
+            System.out.println("Thread caches are not supported with epoch reclamation");
+            return;
+        }
+        threadcaches = ThreadLocal.withInitial(() -> {
+            ThreadCache cache = new ThreadCache(this, bincapacity);
+            threadcacheregistry.add(cache);
+            return cache;
+        });
+    }
+
+    public int releaseOrphanedCaches(){                        //gibt die Caches beendeter Threads zurueck, liefert Anzahl der Caches
+        int released = 0;
+        synchronized (threadcacheregistry) {
+            Iterator<ThreadCache> iterator = threadcacheregistry.iterator();
+            while(iterator.hasNext()) {
+                ThreadCache cache = iterator.next();
+                if(!cache.isOrphaned()) continue;
+                cache.flush();
+                iterator.remove();
+                released++;
+            }
+        }
+        return released;
+    }
+
+    public void flushThreadCache(){                            //gibt die im Cache des aufrufenden Threads liegenden Bloecke zurueck
+        if(threadcaches != null) threadcaches.get().flush();
+    }
+
+    public void enableSlabs(){                                 //aktiviert Slab-Allokation fuer Objekte bis 63B, vor der ersten Allokation aufrufen
+        if(mappedheap != null || checkpoint != null) {         //Slabverzeichnis liegt nur im Java-Heap und ginge beim Neustart verloren
+            System.out.println("Slabs are not supported for persistent heaps");
+            return;
+        }
+        if(tagsize > 0) {
+            System.out.println("Slabs are not supported with generation tags");
+            return;
+        }
+        if(epochs != null) {
+            System.out.println("Slabs are not supported with epoch reclamation");
+            return;
+        }
+        slaballocator = new SlabAllocator(this, segmentlist[segments - 1].endaddress + 1);     //Verzeichnis waechst mit dem Heap
+    }
+
+    public void enableCheckpoints(Path snapshot) throws IOException {     //legt neues Abbild an, der erste Checkpoint schreibt den ganzen Heap
+        if(threadcaches != null || slaballocator != null) {
+            System.out.println("Checkpoints are not supported with thread caches or slabs");
+            return;
+        }
+        if(epochs != null) {
+            System.out.println("Checkpoints are not supported with epoch reclamation");
+            return;
+        }
+        if(regions.length > 1) {
+            System.out.println("Checkpoints are not supported for growing heaps");
+            return;
+        }
+        if(handletable != null) {                               //Handletabelle liegt ausserhalb des Abbilds
+            System.out.println("Checkpoints are not supported with handles");
+            return;
+        }
+        if(tagsize > 0) {                                       //Abbild speichert keine Generationen, wiederhergestellte Bloecke haetten kein Tag
+            System.out.println("Checkpoints are not supported with generation tags");
+            return;
+        }
+        Checkpoint created = Checkpoint.create(snapshot, layout, segments, initblocksize, offheapsize);
+        created.attach(this, segmentlist, true);
+        checkpoint = created;
+    }
+
+    public long checkpoint() throws IOException {              //sichert alle seit dem letzten Checkpoint veraenderten Seiten, liefert geschriebene Bytes
+        if(checkpoint == null) {
+            System.out.println("Checkpoints are not enabled");
+            return 0;
+        }
+        return checkpoint.write();                              //Warteschlangen werden je Segment unter der Sperre des Checkpoints geleert
+    }
+
+    public long trim(){                                         //gibt Seiten im Inneren grosser freier Bloecke an das Betriebssystem zurueck, liefert freigegebene Bytes
+        if(!ForeignBackend.isTrimAvailable()) {
+            System.out.println("Trimming is not supported on this platform");
+            return 0;
+        }
+        long released = 0;
+        trimmarks = true;
+        for(SegmentHeader segment : segmentlist){
+            long stamp = segment.lock.writeLock();                  //Bloecke duerfen waehrenddessen nicht vergeben werden
+            try {
+                released += trimSegment(segment);
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        return released;
+    }
+
+    private long trimSegment(SegmentHeader segment){            //bereits getrimmte Bloecke tragen eine Markierung hinter ihren Zeigern und werden uebersprungen
+        long released = 0;
+        for(int list = segment.findExactBlockList(MIN_TRIM_SIZE); list < segment.freeblocks.length; list++){
+            long block = segment.getListAnchor(list);
+            while(block != 0){
+                int lengthfieldsize = readMarkerLowerBits(block - 1);
+                int blocksize = readLengthField(block, lengthfieldsize);
+                long mark = block + lengthfieldsize + 2 * addresssize;          //Laengenfelder und Zeiger der Liste bleiben erhalten
+                long start = mark + Long.BYTES;
+                long end = block + blocksize - lengthfieldsize;
+                if(readLong(mark) != (TRIM_MARK ^ block)) {
+                    long pages = ForeignBackend.trim(start + getRegionOffset(block), end + getRegionOffset(block));
+                    if(pages > 0) writeLong(mark, TRIM_MARK ^ block);
+                    released += pages;
                 }
-                segment.setListAnchor(blocklist, nextfreeblock);
-            } else {
-                removeBlockFromFreeBlockList(address);
+                block = getNextFreeBlock(block);
             }
-            int blocklengthfield = readMarkerLowerBits(address - 1);
-            int blocksize = readLengthField(address, blocklengthfield);    //Groesse des angeforderten Blocks
-            int newblocksize = blocksize - size - 1;                       //Groesse des neuen freien Blocks
+        }
+        return released;
+    }
 
-            long newblockaddress = address + size + 1;                  //Adresse des neuen freien Blocks
+    public void enableTrimming(long period){                    //trimmt den Heap im Hintergrund alle period Millisekunden
+        if(trimexecutor != null) trimexecutor.shutdownNow();
+        trimexecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-trimmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        trimexecutor.scheduleWithFixedDelay(this::trim, period, period, TimeUnit.MILLISECONDS);
+    }
 
-            //Daten werden in den Block geschrieben
-            writeMarkerLowerBits(address - 1, usedmarkervalue);
-            writeLengthField(address, objectbytearray.length, lengthfieldsize);
-            writeByteArray(address + lengthfieldsize, objectbytearray);
-            writeLengthField(address + lengthfieldsize + objectbytearray.length, objectbytearray.length, lengthfieldsize);
-            writeMarkerUpperBits(address + size, usedmarkervalue);
+    public void enableDeferredFrees(int capacity, long period){     //Freigaben werden je Segment gesammelt und alle period Millisekunden zusammengefasst
+        deferredcapacity = capacity;
+        for(SegmentHeader segment : segmentlist) segment.deferredfrees = new FreeQueue(capacity);
+        if(coalescerexecutor != null) coalescerexecutor.shutdownNow();
+        coalescerexecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        coalescerexecutor.scheduleWithFixedDelay(this::coalesce, period, period, TimeUnit.MILLISECONDS);
+    }
 
+    public void enableRemoteFrees(int capacity){                //Freigaben ausserhalb der eigenen Heimsegmente sperren nicht, sie werden bei der naechsten Allokation im Segment zusammengefasst
+        if(deferredcapacity == 0) {                             //verwendet die Warteschlangen verzoegerter Freigaben, falls schon vorhanden
+            deferredcapacity = capacity;
+            for(SegmentHeader segment : segmentlist) segment.deferredfrees = new FreeQueue(capacity);
+        }
+        remotefrees = true;
+    }
+
+    private boolean isHomeSegment(SegmentHeader segment){       //true, falls der aufrufende Thread im Segment alloziert
+        SegmentHeader[] list = segmentlist;
+        int index = homesegment.get()[0];
+        return index < list.length && list[index] == segment;
+    }
+
+    private long lockOrOffer(SegmentHeader segment, long address){     //wartet nie, liefert Stempel oder 0 falls die Adresse abgelegt wurde
+        long stamp = segment.lock.tryWriteLock();
+        if(stamp != 0) return stamp;
+        if(!segment.deferredfrees.offer(address)) segment.deferredfrees.spill(address);     //Sperrinhaber leert Warteschlange und Ueberlauf
+        return 0;
+    }
+
+    public int coalesce(){                                      //fasst alle verzoegerten Freigaben zusammen, liefert Anzahl freigegebener Bloecke
+        if(threadcaches != null) releaseOrphanedCaches();
+        if(slaballocator != null) slaballocator.releaseEmptySlabs();
+        int released = 0;
+        for(SegmentHeader segment : segmentlist){
+            if((segment.deferredfrees == null || segment.deferredfrees.isEmpty()) && segment.retiredcount == 0) continue;
+            long stamp = segment.lock.writeLock();
+            try {
+                released += releasePendingBlocks(segment);
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        return released;
+    }
+
+    private int drainDeferredFrees(SegmentHeader segment){      //gibt gesammelte Bloecke sortiert frei, Aufrufer haelt Schreibsperre
+        if(segment.deferredfrees == null || segment.deferredfrees.isEmpty()) return 0;
+        long[] blocks = new long[segment.deferredfrees.capacity()];
+        int total = 0;
+        int count;
+        do {                                                    //Ueberlaufliste kann mehr Adressen enthalten als ein Durchgang fasst
+            count = segment.deferredfrees.drain(blocks);
+            Arrays.sort(blocks, 0, count);
+            freeSortedBlocks(segment, blocks, 0, count);
+            total += count;
+        } while(count == blocks.length);
+        return total;
+    }
+
+    public void enableHandles(int capacity){                     //aktiviert bis zu capacity Handles fuer verschiebbare Objekte
+        if(mappedheap != null || checkpoint != null) {          //Handletabelle ginge beim Neustart verloren
+            System.out.println("Handles are not supported for persistent heaps");
+            return;
+        }
+        long size = (long) capacity * Long.BYTES;
+        try {
+            handletable = new HandleTable(createRegion(size));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.out.println("Handle table could not be allocated");
+        }
+    }
+
+    public long allocateHandle(byte[] object){
+        return allocateHandle(object, BYTE_ARRAY_CODEC);
+    }
 
-            if(newblocksize > 0) {
-                cutFreeBlock(segment, newblockaddress, newblocksize); //erstellt aus ueberschuessigem Speicher neuen freien Block
+    public <T> long allocateHandle(T object, Codec<T> codec){        //liefert Handle des Objekts oder 0, das Objekt kann vom Kompaktierer verschoben werden
+        if(handletable == null) {
+            System.out.println("Handles are not enabled");
+            return 0;
+        }
+        int index = handletable.acquire();
+        if(index < 0) return 0;
+        int objectsize = codec.getEncodedSize(object);
+        int blockobjectsize = objectsize + Long.BYTES;                  //Block beginnt mit dem Index des Handles, ohne Slabs und Thread-Cache
+        long address = allocateInSegment(segment -> {
+            long block = allocateBlock(segment, blockobjectsize);
+            if(block != 0) {
+                long dataaddress = getDataAddress(block);
+                writeLong(dataaddress, index);
+                encode(object, codec, dataaddress + Long.BYTES, objectsize);
+                handletable.set(index, block);                      //Eintrag wird unter der Schreibsperre des Segments gesetzt
             }
+            return block;
+        }, blockobjectsize);
+        if(address == 0) {
+            handletable.release(index);
+            return 0;
+        }
+        return index + 1;
+    }
+
+    public byte[] readHandle(long handle){
+        return readHandle(handle, BYTE_ARRAY_CODEC);
+    }
+
+    public <T> T readHandle(long handle, Codec<T> codec){
+        int index = getHandleIndex(handle);
+        if(index < 0) return null;
+        long address = handletable.get(index);
+        SegmentHeader segment = address > 0 ? getSegmentByAddress(address) : null;     //Block bleibt immer in seinem Segment
+        if(segment == null) {
+            System.out.println("Unknown Handle");
+            return null;
+        }
+        T object = null;
+        long stamp = segment.lock.tryOptimisticRead();
+        for(int i = 0; i < 3; i++){
+            address = handletable.get(index);                   //Adresse wird nach dem Stempel gelesen, verschoben wird nur unter Schreibsperre
+            if(address > 0 && isBlockUsed(address)) {
+                try {
+                    object = decodeHandleBlock(address, codec);
+                } catch (RuntimeException e) {
+                    if(segment.lock.validate(stamp)) throw e;
+                }
+            } else if(segment.lock.validate(stamp)) {
+                System.out.println("Unknown Handle");
+                return null;
+            }
+            if(segment.lock.validate(stamp)) {
+                return object;
+            }
+            stamp = segment.lock.tryOptimisticRead();
+        }
+        stamp = segment.lock.readLock();
+        try {
+            address = handletable.get(index);
+            if(address <= 0) {
+                System.out.println("Unknown Handle");
+                return null;
+            }
+            return decodeHandleBlock(address, codec);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    private <T> T decodeHandleBlock(long address, Codec<T> codec){
+        return decode(codec, getDataAddress(address) + Long.BYTES, readObjectSize(address) - Long.BYTES);
+    }
+
+    public void freeHandle(long handle){
+        int index = getHandleIndex(handle);
+        if(index < 0) return;
+        long address = handletable.get(index);
+        SegmentHeader segment = address > 0 ? getSegmentByAddress(address) : null;
+        if(segment == null) {
+            System.out.println("Unknown Handle");
+            return;
+        }
+        long stamp = segment.lock.writeLock();
+        try {
+            address = handletable.get(index);                   //Block kann inzwischen verschoben worden sein
+            if(address <= 0) {
+                System.out.println("Unknown Handle");
+                return;
+            }
+            freeBlock(segment, address);
+            handletable.release(index);
         } finally {
             segment.lock.unlockWrite(stamp);
         }
+    }
 
-        return address;
+    private int getHandleIndex(long handle){
+        if(handletable == null) {
+            System.out.println("Handles are not enabled");
+            return -1;
+        }
+        if(!handletable.isHandle(handle - 1)) {
+            System.out.println("Unknown Handle");
+            return -1;
+        }
+        return (int) (handle - 1);
+    }
 
+    private int getHandleOfBlock(long address){                 //Index des Handles eines belegten Blocks, -1 fuer Bloecke ohne Handle
+        if(readObjectSize(address) < Long.BYTES) return -1;
+        long index = readLong(getDataAddress(address));
+        if(!handletable.isHandle(index) || handletable.get((int) index) != address) return -1;     //Daten anderer Bloecke koennen zufaellig einem Index gleichen
+        return (int) index;
+    }
 
+    public long compact(){                                      //schiebt Objekte mit Handle in freie Luecken davor, liefert verschobene Bytes
+        if(handletable == null) {
+            System.out.println("Handles are not enabled");
+            return 0;
+        }
+        long moved = 0;
+        for(SegmentHeader segment : segmentlist){
+            long stamp = segment.lock.writeLock();
+            try {
+                releasePendingBlocks(segment);
+                moved += compactSegment(segment);
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        return moved;
+    }
+
+    private long compactSegment(SegmentHeader segment){         //Aufrufer haelt Schreibsperre, Bloecke ohne Handle bleiben liegen
+        long moved = 0;
+        long gap = 0;                                           //Anfang der Luecke aus freien Bloecken vor dem aktuellen Block, 0 falls keine
+        long address = segment.startaddress + 1;
+        while(address < segment.endaddress - 1) {
+            int blocksize = getBlockSize(address);
+            long nextblock = address + blocksize + 1;
+            if(nextblock - 1 > segment.endaddress) break;
+            if(!isBlockUsed(address)) {
+                if(isListedFreeBlock(address)) removeBlockFromFreeBlockList(segment, address);
+                if(gap == 0) gap = address;
+            } else if(gap != 0) {
+                int index = getHandleOfBlock(address);
+                if(index >= 0) {                                //Block rutscht an den Anfang der Luecke, die Luecke wandert hinter ihn
+                    byte marker = (byte) readMarkerLowerBits(address - 1);
+                    getRegion(address).copyMemory(address + getRegionOffset(address), gap + getRegionOffset(gap), blocksize);
+                    markDirty(gap, blocksize);
+                    writeMarkerLowerBits(gap - 1, marker);
+                    writeMarkerUpperBits(gap + blocksize, marker);
+                    handletable.set(index, gap);
+                    gap += blocksize + 1;
+                    moved += blocksize;
+                } else {
+                    createFreeRange(segment, gap, address - 1);
+                    gap = 0;
+                }
+            }
+            address = nextblock;
+        }
+        if(gap != 0) createFreeRange(segment, gap, address - 1);
+        return moved;
+    }
+
+    private void createFreeRange(SegmentHeader segment, long start, long end){     //zerlegt Bereich bis zum Marker bei end in freie Bloecke bis initblocksize
+        while(end - start > initblocksize) {
+            int blocksize = end - start - initblocksize - 1 > 0 ? initblocksize : initblocksize - 1;    //Rest muss mindestens 1B gross sein
+            cutFreeBlock(segment, start, blocksize);
+            start += blocksize + 1;
+        }
+        cutFreeBlock(segment, start, (int) (end - start));
+    }
+
+    public void enableCompaction(long period){                  //kompaktiert den Heap im Hintergrund alle period Millisekunden
+        if(handletable == null) {
+            System.out.println("Handles are not enabled");
+            return;
+        }
+        if(compactorexecutor != null) compactorexecutor.shutdownNow();
+        compactorexecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactorexecutor.scheduleWithFixedDelay(this::compact, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public long allocateStruct(StructLayout layout){                  //reserviert mit 0 initialisiertes Objekt fuer das Layout
+        return allocateSerialized(new byte[layout.getSize()]);
+    }
+
+    public long allocate(Serializable object) throws IOException {
+        return allocateSerialized(serialize(object));                 //serialisiert das Objekt in ein Byte Array
     }
 
     public long allocateSerialized(byte[] object) {
-        byte usedmarkervalue = getUsedBlockMarkerValue(object.length);       //Markerwert des allozierten Speichers
+        return allocate(object, BYTE_ARRAY_CODEC);
+    }
+
+    public <T> long allocate(T object, Codec<T> codec) {                //kodiert das Objekt ohne Zwischenpuffer direkt in den Block
+        return allocate(object, codec, codec.getEncodedSize(object));
+    }
+
+    long allocateChunk(int size){                                      //reserviert Block fuer eine ScopedArena, ohne Slabs und Thread-Cache
+        return allocateInSegment(segment -> allocateBlock(segment, size), size);
+    }
+
+    public ScopedArena createArena(){                                  //Arena mit Chunks bis DEFAULT_CHUNK_SIZE, maximal initblocksize
+        return new ScopedArena(this, Math.min(ScopedArena.DEFAULT_CHUNK_SIZE, initblocksize - 8));
+    }
+
+    private <T> long allocate(T object, Codec<T> codec, int objectsize) {   //ohne Codec wird nur der Speicher reserviert
+        if(slaballocator != null && objectsize <= SlabAllocator.MAX_SLAB_OBJECT_SIZE) {   //sehr kleine Objekte werden in Slabs abgelegt
+            return slaballocator.allocate(object, codec, objectsize);
+        }
+        if(threadcaches != null && objectsize <= ThreadCache.MAX_CACHED_SIZE) {     //kleine Objekte werden aus dem Thread-Cache bedient
+            long address = threadcaches.get().allocate(objectsize);
+            if(address != 0) encode(object, codec, getDataAddress(address), objectsize);
+            return tag(address);
+        }
+        return tag(allocateInSegment(segment -> {
+            long address = allocateBlock(segment, objectsize);
+            if(address != 0) {
+                encode(object, codec, getDataAddress(address), objectsize);      //Daten werden in den Block geschrieben
+            }
+            return address;
+        }, objectsize));
+    }
+
+    private long allocateInSegment(ToLongFunction<SegmentHeader> allocation, int objectsize){     //fuehrt Allokation unter der Schreibsperre eines Segments aus
+        SegmentHeader[] list = segmentlist;
+        int[] home = homesegment.get();
+        SegmentHeader segment;
+        long result;
+        if(flatcombining) {                                 //Thread bleibt im Heimsegment, Wartezeit wird fuer das Sammeln genutzt
+            segment = list[home[0]];
+            result = segment.combiner.execute(segment, combined -> allocateLocked(combined, allocation));
+        } else {
+            long stamp = writeLockSegment(list, home);
+            segment = list[home[0]];
+            try {
+                result = allocateLocked(segment, allocation);
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        if(result != 0) return result;
+
+        boolean[] tried = new boolean[list.length];     //Heimsegment ist erschoepft, uebrige Segmente werden nach Belegung durchsucht
+        tried[home[0]] = true;
+        for(int attempt = 1; attempt < list.length; attempt++){
+            int index = findLeastUsedSegment(list, tried);
+            tried[index] = true;
+            segment = list[index];
+            long stamp = segment.lock.writeLock();
+            try {
+                result = allocateLocked(segment, allocation);
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+            if(result != 0) {
+                home[0] = index;                        //Thread wechselt dauerhaft in das Segment mit freiem Speicher
+                return result;
+            }
+        }
+        if(threadcaches != null && releaseOrphanedCaches() > 0) return allocateInSegment(allocation, objectsize);    //Bloecke beendeter Threads koennen Platz schaffen
+        int lengthfieldsize = getUsedBlockMarkerValue(objectsize + tagsize) - 8;
+        if(objectsize + tagsize + 2 * lengthfieldsize > initblocksize || !addRegion(list)) return 0;   //nur Bloecke bis initblocksize passen in einen neuen Bereich
+        home[0] = list.length;                          //Thread beginnt im ersten neuen Segment
+        return allocateInSegment(allocation, objectsize);
+    }
+
+    private long allocateLocked(SegmentHeader segment, ToLongFunction<SegmentHeader> allocation){     //Aufrufer haelt Schreibsperre
+        if(remotefrees) drainDeferredFrees(segment);            //Freigaben anderer Threads werden vom allozierenden Thread zusammengefasst
+        long result = allocation.applyAsLong(segment);
+        if(result == 0 && releasePendingBlocks(segment) > 0) result = allocation.applyAsLong(segment);    //verzoegerte Freigaben koennen Platz schaffen
+        return result;
+    }
+
+    private long allocateBlock(SegmentHeader segment, int objectsize){         //reserviert Block fuer Objekt, Aufrufer haelt Schreibsperre
+        objectsize += tagsize;                                      //Laengenfelder umfassen die Generation
+        byte usedmarkervalue = getUsedBlockMarkerValue(objectsize);       //Markerwert des allozierten Speichers
         int lengthfieldsize = usedmarkervalue - 8;  //berechnet Laengenfeldgroesse fuer belegten Block
-        int size = object.length + 2 * lengthfieldsize;
-        long address;
+        int size = objectsize + 2 * lengthfieldsize;
 
-        SegmentHeader segment = findSegment();
-        long stamp = segment.lock.writeLock();
-        try {
-            segment.usedspace += size;
-            int blocklist = segment.findFittingBlockList(size);         //Suche nach passendem freien Block
+        long address;
+        int blocklist = segment.findFittingBlockList(size + 2);     //Suche nach passendem freien Block ueber die Bitmaps, jeder Block der Liste passt
+        if(blocklist >= 0) {
             address = segment.getListAnchor(blocklist);
-            address = findFittingBlockInList(size, address);
-            while(address == 0){
-                blocklist++;
-                address = findFittingBlockInList(size, segment.getListAnchor(blocklist));
-            }
-            if(address == segment.getListAnchor(blocklist)){            //Falls Block erstes Element der Liste ist wird der Nachfolger neuer Anker
-                long nextfreeblock = getNextFreeBlock(address);
-                if(nextfreeblock != 0) {
-                    int freelengthfieldsize = readMarkerLowerBits(nextfreeblock - 1);
-                    writeAddressField(nextfreeblock + freelengthfieldsize + ADDRESS_SIZE, 0);
+        } else {                                                    //nur bei fast vollem Segment werden die Listen der Groessenklasse durchsucht
+            address = findFittingBlockInList(size, segment.getListAnchor(segment.findExactBlockList(size + 2)));
+            if(address == 0) address = findFittingBlockInList(size, segment.getListAnchor(segment.findExactBlockList(size)));
+            if(address == 0) return 0;
+        }
+        removeBlockFromFreeBlockList(segment, address);
+        segment.usedspace.add(size);
+
+        int blocksize = getBlockSize(address);                         //Groesse des angeforderten Blocks
+        int newblocksize = blocksize - size - 1;                       //Groesse des neuen freien Blocks
+        long newblockaddress = address + size + 1;                  //Adresse des neuen freien Blocks
+
+        writeMarkerLowerBits(address - 1, usedmarkervalue);
+        writeLengthField(address, objectsize, lengthfieldsize);
+        writeLengthField(address + lengthfieldsize + objectsize, objectsize, lengthfieldsize);
+        writeMarkerUpperBits(address + size, usedmarkervalue);
+        if(tagsize > 0) {                                           //neuer Block erhaelt die naechste Generation des Segments
+            segment.generation = nextGeneration(segment.generation);
+            writeShort(address + lengthfieldsize, (short) segment.generation);
+        }
+        if(newblocksize > 0) {
+            cutFreeBlock(segment, newblockaddress, newblocksize); //erstellt aus ueberschuessigem Speicher neuen freien Block
+        }
+        return address;
+    }
+
+    long reserveBlock(int objectsize){                              //reserviert Block ohne Daten zu schreiben
+        return allocateInSegment(segment -> allocateBlock(segment, objectsize), objectsize);
+    }
+
+    int refillBlocks(int objectsize, long[] blocks, int count){       //reserviert mehrere Bloecke gleicher Groesse unter einer Sperre
+        return (int) allocateInSegment(segment -> {
+            int allocated = 0;
+            while(allocated < count){
+                long address = allocateBlock(segment, objectsize);
+                if(address == 0) break;
+                blocks[allocated++] = address;
+            }
+            return allocated;
+        }, objectsize);
+    }
+
+    void releaseBlocks(long[] blocks, int from, int to){             //gibt mehrere Bloecke frei, Sperre wird je Segment nur einmal geholt
+        Arrays.sort(blocks, from, to);
+        int i = from;
+        while(i < to){
+            SegmentHeader segment = getSegmentByAddress(blocks[i]);
+            if(segment == null) {
+                System.out.println("Unknown Address");
+                i++;
+                continue;
+            }
+            long stamp = segment.lock.writeLock();
+            try {
+                i = freeSortedBlocks(segment, blocks, i, to);
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private int freeSortedBlocks(SegmentHeader segment, long[] blocks, int i, int to){      //liefert Index des ersten Blocks hinter dem Segment
+        long previous = 0;
+        while(i < to && blocks[i] < segment.endaddress) {      //aufsteigend freigegebene Nachbarn werden direkt zusammengefasst
+            if(blocks[i] != previous && blocks[i] > segment.startaddress && isBlockUsed(blocks[i])) {      //doppelt freigegebene Bloecke liegen nach dem Sortieren hintereinander
+                retireBlock(segment, blocks[i]);
+            } else {
+                System.out.println("No object at this address");
+            }
+            previous = blocks[i++];
+        }
+        return i;
+    }
+
+    public long[] allocateBatch(byte[][] objects){                   //alloziert mehrere Objekte, Sperre wird je Segment nur einmal geholt
+        long[] addresses = new long[objects.length];                 //0 fuer Objekte, fuer die kein Speicher frei ist
+        int[] pending = new int[objects.length];
+        int count = 0;
+        for(int i = 0; i < objects.length; i++){
+            if(slaballocator != null && objects[i].length <= SlabAllocator.MAX_SLAB_OBJECT_SIZE) {   //Slabs benoetigen keine Segmentsperre
+                addresses[i] = slaballocator.allocate(objects[i], BYTE_ARRAY_CODEC, objects[i].length);
+            } else {
+                pending[count++] = i;
+            }
+        }
+        int done = 0;
+        while(done < count){
+            int from = done;
+            int total = count;
+            int allocated = (int) allocateInSegment(segment -> {          //belegt Bloecke, bis das Segment erschoepft ist
+                int i = from;
+                while(i < total){
+                    byte[] object = objects[pending[i]];
+                    long address = allocateBlock(segment, object.length);
+                    if(address == 0) break;
+                    encode(object, BYTE_ARRAY_CODEC, getDataAddress(address), object.length);
+                    addresses[pending[i++]] = tag(address);
                 }
-                segment.setListAnchor(blocklist, nextfreeblock);
+                return i - from;
+            }, objects[pending[from]].length);
+            done += Math.max(allocated, 1);                              //Objekt passt in kein Segment und wird uebersprungen
+        }
+        return addresses;
+    }
+
+    public void deallocateBatch(long[] addresses){                   //gibt mehrere Objekte frei, Sperre wird je Segment nur einmal geholt
+        long[] blocks = new long[addresses.length];
+        int count = 0;
+        for(long address : addresses){
+            if(address == 0) continue;                              //allocateBatch liefert 0 fuer Objekte ohne Speicher
+            if(tagsize > 0) {
+                address = untag(address);
+                if(address == 0) continue;
+                advanceGeneration(address);
+            }
+            Slab slab = slaballocator != null ? slaballocator.findSlab(address) : null;
+            if(slab != null) {
+                slaballocator.free(slab, address);
             } else {
-                removeBlockFromFreeBlockList(address);
+                blocks[count++] = address;
             }
-            int blocklengthfield = readMarkerLowerBits(address - 1);
-            int blocksize = readLengthField(address, blocklengthfield);    //Groesse des angeforderten Blocks
-            int newblocksize = blocksize - size - 1;                       //Groesse des neuen freien Blocks
+        }
+        if(versionstripes > 0 && epochs == null) {                    //zurueckgestellte Bloecke bleiben fuer Leser gueltig
+            for(int i = 0; i < count; i++) beginBlockWrite(getSegmentByAddress(blocks[i]), blocks[i]);
+        }
+        releaseBlocks(blocks, 0, count);
+        if(versionstripes > 0 && epochs == null) {
+            for(int i = 0; i < count; i++) endBlockWrite(getSegmentByAddress(blocks[i]), blocks[i]);
+        }
+    }
 
-            long newblockaddress = address + size + 1;                  //Adresse des neuen freien Blocks
+    public void deallocate(long address){
+        if(tagsize > 0) {
+            address = untag(address);
+            if(address == 0) return;
+        }
+        freeObject(address);
+    }
 
-            //Daten werden in den Block geschrieben
-            writeMarkerLowerBits(address - 1, usedmarkervalue);
-            writeLengthField(address, object.length, lengthfieldsize);
-            writeByteArray(address + lengthfieldsize, object);
-            writeLengthField(address + lengthfieldsize + object.length, object.length, lengthfieldsize);
-            writeMarkerUpperBits(address + size, usedmarkervalue);
-            if(newblocksize > 0) {
-                cutFreeBlock(segment, newblockaddress, newblocksize); //erstellt aus ueberschuessigem Speicher neuen freien Block
+    private void freeObject(long address){
+        SegmentHeader segment = getSegmentByAddress(address);
+        if(segment == null || segment.versions == null || epochs != null) {      //zurueckgestellte Bloecke bleiben fuer Leser gueltig
+            releaseObject(address);
+            return;
+        }
+        beginBlockWrite(segment, address);                      //Leser, die den Block gerade lesen, werden ungueltig
+        try {
+            releaseObject(address);
+        } finally {
+            endBlockWrite(segment, address);
+        }
+    }
+
+    private void releaseObject(long address){
+        if(tagsize > 0) advanceGeneration(address);            //alte Adressen werden abgewiesen, auch solange der Block im Cache liegt
+        if(slaballocator != null) {
+            Slab slab = slaballocator.findSlab(address);
+            if(slab != null) {
+                slaballocator.free(slab, address);
+                return;
+            }
+        }
+        SegmentHeader segment = getSegmentByAddress(address);
+        if(segment != null && address > segment.startaddress) {       //Marker vor der Adresse darf erst nach der Pruefung gelesen werden
+            if(threadcaches != null && threadcaches.get().free(address)) return;      //kleine Bloecke werden im Thread-Cache zwischengespeichert
+            boolean queued = segment.deferredfrees != null && (coalescerexecutor != null || !isHomeSegment(segment));
+            if(queued && segment.deferredfrees.offer(address)) return;     //Zusammenfassen uebernimmt der Hintergrundthread bzw. der naechste allozierende Thread
+            if(segment.combiner != null && !(queued && remotefrees)) {
+                segment.combiner.execute(segment, combined -> {
+                    drainDeferredFrees(combined);
+                    retireBlock(combined, address);
+                    return 0;
+                });
+                return;
+            }
+            long stamp = queued && remotefrees ? lockOrOffer(segment, address) : segment.lock.writeLock();
+            if(stamp == 0) return;
+            try {
+                drainDeferredFrees(segment);                    //volle Warteschlange wird vom freigebenden Thread geleert
+                retireBlock(segment, address);
+            }finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        else {
+            System.out.println("Unknown Address");
+        }
+
+    }
+
+    private void freeBlock(SegmentHeader segment, long address){        //gibt belegten Block frei, Aufrufer haelt Schreibsperre
+        int freeblocksize = getBlockSize(address);
+        segment.usedspace.add(-freeblocksize);
+        long freeblockstart = address;
+        long nextblock = address + freeblocksize + 1;
+
+        //ueberprueft ob vorheriger Block frei ist und fuegt ihn ggf zu neuem Block hinzu
+        if (address - 1 > segment.startaddress && isPreviousBlockFree(address)) {
+            long previousblock = getPreviousBlock(address);
+            int prevsize = (int) (address - 1 - previousblock);
+            if (freeblocksize + prevsize + 1 <= initblocksize) {
+                if (isListedFreeBlock(previousblock)) removeBlockFromFreeBlockList(segment, previousblock);
+                freeblocksize += prevsize + 1;
+                freeblockstart = previousblock;
+            }
+        }
+
+        //ueberprueft ob nachfolgender Block frei ist und fuegt ihn ggf zu neuem Block hinzu
+        if (nextblock < segment.endaddress && isBlockFree(nextblock)) {
+            int nextblocksize = getBlockSize(nextblock);
+            if (freeblocksize + nextblocksize + 1 <= initblocksize) {
+                if (isListedFreeBlock(nextblock)) removeBlockFromFreeBlockList(segment, nextblock);
+                freeblocksize += nextblocksize + 1;
+            }
+        }
+        cutFreeBlock(segment, freeblockstart, freeblocksize);  //erstellt neuen freien Block und fuegt ihn Liste hinzu
+    }
+
+    public long reallocate(long address, int newsize){         //aendert Objektgroesse, liefert neue Adresse oder 0 falls kein Speicher frei ist
+        if(tagsize > 0) {
+            address = untag(address);
+            if(address == 0) return 0;
+        }
+        int objectsize;
+        if(slaballocator != null) {
+            Slab slab = slaballocator.findSlab(address);
+            if(slab != null) {
+                slab.lockSlot(address);
+                try {
+                    objectsize = slaballocator.readSize(slab, address);
+                    if(objectsize < 0) return 0;
+                    if(newsize < slab.slotsize) {               //Slot bietet genug Platz, nur das Laengenbyte aendert sich
+                        writeByte(address, (byte) newsize);
+                        return address;
+                    }
+                } finally {
+                    slab.unlockSlot(address, true);
+                }
+                return relocate(address, address + 1, objectsize, newsize);
+            }
+        }
+        SegmentHeader segment = getSegmentByAddress(address);
+        if(segment == null) {
+            System.out.println("Unknown Address");
+            return 0;
+        }
+        long stamp = segment.lock.writeLock();
+        try {
+            int marker = readMarkerLowerBits(address - 1);
+            if(!isUsedMarker(marker)) {
+                System.out.println("No object at this address");
+                return 0;
+            }
+            objectsize = readObjectSize(address, marker - 8);
+            beginBlockWrite(segment, address);
+            try {
+                if(resizeBlock(segment, address, objectsize + tagsize, newsize + tagsize)) return tag(address);
+            } finally {
+                endBlockWrite(segment, address);
             }
         } finally {
             segment.lock.unlockWrite(stamp);
         }
-        return address;
-
-
+        return relocate(address, getDataAddress(address), objectsize, newsize);
     }
 
-    public void deallocate(long address){
-        SegmentHeader segment = getSegmentByAddress(address);
-
-        if(segment != null) {
-            long stamp = segment.lock.writeLock();
-            try {
-                int lengthfieldsize = readMarkerLowerBits(address - 1) - 8;
-                int freeblocksize = readLengthField(address, lengthfieldsize) + 2 * lengthfieldsize;
-                segment.usedspace -= freeblocksize;
-                long freeblockstart = address;
-                long previousblock;
-
-
-                //ueberprueft ob vorheriger Block frei ist und fuegt ihn ggf zu neuem Block hinzu
-                if (isBlockInSegment(freeblockstart - 2, segment) && isPreviousBlockFree(freeblockstart) && freeblocksize < initblocksize) {
-                    previousblock = getPreviousBlock(freeblockstart);
-                    int prevmarker = readMarkerLowerBits(previousblock - 1);
-                    if (prevmarker == 0) {
-                        int prevsize = readLengthField(previousblock, 1);
-                        if (freeblocksize + prevsize + 1 <= initblocksize) {
-                            freeblocksize += prevsize;
-                            freeblockstart = previousblock;
-                        }
-                    } else if (prevmarker == 15) {
-                        int prevsize = 1;
-                        if (freeblocksize + prevsize + 1 <= initblocksize) {
-                            freeblocksize += prevsize;
-                            freeblockstart = previousblock;
-                        }
-                    } else {
-                        int prevsize = readLengthField(previousblock, prevmarker);
-                        if (freeblocksize + prevsize + 1 <= initblocksize) {
-                            removeBlockFromFreeBlockList(previousblock);
-                            freeblocksize += prevsize;
-                            freeblockstart = previousblock;
-                        }
-                    }
-                }
-
-                long nextblock = getNextBlock(address);
-
-                //ueberprueft ob nachfolgender Block frei ist und fügt ihn ggf zu neuem Block hinzu
-                if (isBlockInSegment(nextblock, segment) && isNextBlockFree(address) && freeblocksize < initblocksize) {
-                    int nextmarker = readMarkerLowerBits(nextblock - 1);
-                    if (nextmarker == 0) {
-                        int nextblocksize = readLengthField(nextblock, 1);
-                        if (freeblocksize + nextblocksize + 1 <= initblocksize) {
-                            freeblocksize += nextblocksize + 1;
-                        }
-                    } else if (nextmarker == 15) {
-                        int nextblocksize = 1;
-                        if (freeblocksize + nextblocksize + 1 <= initblocksize) {
-                            freeblocksize += nextblocksize + 1;
-                        }
-                    } else {
-                        int nextblocksize = readLengthField(nextblock, nextmarker);
-                        if (freeblocksize + nextblocksize <= initblocksize) {
-                            freeblocksize += nextblocksize + 1;
-                            removeBlockFromFreeBlockList(nextblock);
-                        }
-                    }
-
-
-                }
-                //erstellt neuen freien Block und fuegt ihn Liste
-                int freeblocklist = segment.findExactBlockList(freeblocksize);
-                byte markervalue = getFreeBlockMarkerValue(freeblocksize);
-                writeMarkerLowerBits(freeblockstart - 1, markervalue);
-                writeMarkerUpperBits(freeblockstart + freeblocksize + 1, markervalue);
-                createFreeBlock(freeblockstart, freeblocksize, 0, 0);
-                changeListAnchor(segment, freeblocklist, freeblockstart);
-            }finally {
-                segment.lock.unlockWrite(stamp);
+    private boolean resizeBlock(SegmentHeader segment, long address, int objectsize, int newsize){   //aendert Blockgroesse ohne Verschieben, Aufrufer haelt Schreibsperre
+        byte usedmarkervalue = getUsedBlockMarkerValue(newsize);
+        int lengthfieldsize = usedmarkervalue - 8;
+        if(readMarkerLowerBits(address - 1) != usedmarkervalue) return false;  //Daten muessten wegen anderer Laengenfeldgroesse verschoben werden
+        int size = objectsize + 2 * lengthfieldsize;
+        int newblocksize = newsize + 2 * lengthfieldsize;
+        if(newblocksize > size && newblocksize > initblocksize) return false;
+
+        long nextblock = address + size + 1;
+        int space = size;                                           //verfuegbarer Speicher ab Blockanfang bis vor den abschliessenden Marker
+        if(nextblock < segment.endaddress && isBlockFree(nextblock)) {     //freier Nachfolger wird aufgenommen bzw. mit dem Rest zusammengefasst
+            int merged = size + getBlockSize(nextblock) + 1;
+            if(fitsInPlace(newblocksize, merged) && merged - newblocksize - 1 <= initblocksize) {
+                if(isListedFreeBlock(nextblock)) removeBlockFromFreeBlockList(segment, nextblock);
+                space = merged;
             }
         }
-        else {
-            System.out.println("Unknown Address");
+        if(!fitsInPlace(newblocksize, space)) return false;
+
+        segment.usedspace.add(newblocksize - size);
+        writeLengthField(address, newsize, lengthfieldsize);
+        writeLengthField(address + lengthfieldsize + newsize, newsize, lengthfieldsize);
+        writeMarkerUpperBits(address + newblocksize, usedmarkervalue);
+        if(space > newblocksize) {
+            cutFreeBlock(segment, address + newblocksize + 1, space - newblocksize - 1);    //ueberschuessiger Speicher wird neuer freier Block
         }
+        return true;
+    }
 
+    private boolean fitsInPlace(int blocksize, int space){         //bei einem Rest von 0B fehlt der Platz fuer den Marker eines neuen Blocks
+        return blocksize == space || blocksize <= space - 2;
     }
 
-    public void writeObject(long address, Serializable object) throws IOException {
-        SegmentHeader segment = getSegmentByAddress(address);
-        if(segment != null) {
-            long stamp = segment.lock.writeLock();
-            try {
-                int lengthfieldsize = readMarkerLowerBits(address - 1) - 8;
-                int blocksize = readLengthField(address, lengthfieldsize);
-                byte[] objectarray = serialize(object);
-                if (objectarray.length != blocksize) {
-                    System.out.println("Object is of different size");
-                } else {
-                    writeByteArray(address + lengthfieldsize, objectarray);
-                }
-            } finally {
-                segment.lock.unlockWrite(stamp);
-            }
+    private long relocate(long address, long dataaddress, int objectsize, int newsize){   //verschiebt Objekt in einen neuen Block
+        long newaddress = allocate(null, null, newsize);
+        if(newaddress == 0) return 0;
+        long newdataaddress = getObjectAddress(newaddress);
+        int copysize = Math.min(objectsize, newsize);
+        if(getRegion(dataaddress) == getRegion(newdataaddress)) {
+            getRegion(dataaddress).copyMemory(dataaddress + getRegionOffset(dataaddress), newdataaddress + getRegionOffset(newdataaddress), copysize);
+            markDirty(newdataaddress, copysize);
+        } else {
+            writeByteArray(newdataaddress, readByteArray(dataaddress, copysize));     //Bereiche koennen getrennt verwaltet werden
         }
+        freeObject(address);
+        return newaddress;
+    }
+
+    public void writeObject(long address, Serializable object) throws IOException {
+        writeSerialized(address, serialize(object));
     }
 
     public void writeSerialized(long address, byte[] object) {
+        writeObject(address, object, BYTE_ARRAY_CODEC);
+    }
+
+    public <T> void writeObject(long address, T object, Codec<T> codec) {
+        int objectsize = codec.getEncodedSize(object);
+        long generation = address >>> GENERATION_SHIFT;
+        if(tagsize > 0) address &= ADDRESS_MASK;
+        if(slaballocator != null) {
+            Slab slab = slaballocator.findSlab(address);
+            if(slab != null) {
+                slaballocator.write(slab, address, object, codec, objectsize);
+                return;
+            }
+        }
         SegmentHeader segment = getSegmentByAddress(address);
         if(segment != null) {
             long stamp = segment.lock.writeLock();
             try {
                 int lengthfieldsize = readMarkerLowerBits(address - 1) - 8;
-                int blocksize = readLengthField(address, lengthfieldsize);
-                if (object.length != blocksize) {
+                int blocksize = readObjectSize(address, lengthfieldsize);
+                if (tagsize > 0 && !isBlockUsed(address)) {
+                    System.out.println("No object at this address");
+                } else if (tagsize > 0 && readGeneration(address) != generation) {
+                    System.out.println("Stale address");
+                } else if (objectsize != blocksize) {
                     System.out.println("Object is of different size");
                 } else {
-                    writeByteArray(address + lengthfieldsize, object);
+                    beginBlockWrite(segment, address);
+                    try {
+                        encode(object, codec, address + lengthfieldsize + tagsize, objectsize);
+                    } finally {
+                        endBlockWrite(segment, address);
+                    }
                 }
             } finally {
                 segment.lock.unlockWrite(stamp);
@@ -334,35 +1251,108 @@ public class MemoryManager {
     }
 
     public byte[] readObject(long address){
+        return readObject(address, BYTE_ARRAY_CODEC);
+    }
+
+    private long tryOptimisticRead(SegmentHeader segment, long address){    //liefert Stempel des Segments bzw. Version des Blocks, -1 bei laufendem Schreibzugriff
+        if(segment.versions == null) {
+            long stamp = segment.lock.tryOptimisticRead();
+            return stamp == 0 ? -1 : stamp;
+        }
+        long version = segment.versions.get(segment.getVersionIndex(address));
+        return (version & VERSION_WRITERS) != 0 ? -1 : version;
+    }
+
+    private boolean validate(SegmentHeader segment, long address, long stamp){
+        if(stamp == -1) return false;
+        if(segment.versions == null) return segment.lock.validate(stamp);
+        VarHandle.acquireFence();                                   //Daten muessen vor dem erneuten Lesen der Version gelesen sein
+        return segment.versions.get(segment.getVersionIndex(address)) == stamp;
+    }
+
+    private void beginBlockWrite(SegmentHeader segment, long address){     //macht optimistische Leser des Blocks ungueltig
+        if(segment != null && segment.versions != null) segment.versions.getAndAdd(segment.getVersionIndex(address), 1);
+    }
+
+    private void endBlockWrite(SegmentHeader segment, long address){
+        if(segment != null && segment.versions != null) segment.versions.getAndAdd(segment.getVersionIndex(address), VERSION_SEQUENCE - 1);
+    }
+
+    public <T> T readObject(long address, Codec<T> codec){
+        if(epochs == null) return readBlock(address, codec);
+        epochs.enter();                                         //Bloecke werden waehrend des Lesens nicht wiederverwendet
+        try {
+            return readBlock(address, codec);
+        } finally {
+            epochs.exit();
+        }
+    }
+
+    private <T> T readBlock(long address, Codec<T> codec){
+        long generation = address >>> GENERATION_SHIFT;
+        if(tagsize > 0) address &= ADDRESS_MASK;
+        if(slaballocator != null) {
+            Slab slab = slaballocator.findSlab(address);
+            if(slab != null) return slaballocator.read(slab, address, codec);
+        }
         SegmentHeader segment = getSegmentByAddress(address);
-        byte[] object = null;
+        T object = null;
         if(segment!=null) {
-            long stamp = segment.lock.tryOptimisticRead();          //versucht zunächst optimistischen Lesezugriff
+            long stamp = tryOptimisticRead(segment, address);          //versucht zunächst optimistischen Lesezugriff
             for (int i = 0; i < 3; i++) {
                 int lengthfieldsize = readMarkerLowerBits(address - 1);
-                if ((lengthfieldsize >= 1 && lengthfieldsize <= 3) || lengthfieldsize == 0 || lengthfieldsize == 15) {
+                if (!isUsedMarker(lengthfieldsize)) {
                     System.out.println("No object at this address");
                     return null;
                 } else {
                     lengthfieldsize -= 8;
                 }
-                int objectsize = readLengthField(address, lengthfieldsize);
-                object = readByteArray(address + lengthfieldsize, objectsize);
-                if (segment.lock.validate(stamp)) {
+                if (tagsize > 0 && readGeneration(address) != generation) {     //Block wurde freigegeben und ggf. neu vergeben
+                    if (validate(segment, address, stamp)) {
+                        System.out.println("Stale address");
+                        return null;
+                    }
+                    stamp = tryOptimisticRead(segment, address);
+                    continue;
+                }
+                int objectsize = readObjectSize(address, lengthfieldsize);
+                if (objectsize < 0 || address + lengthfieldsize + tagsize + objectsize > segment.endaddress) {    //Laengenfeld eines gleichzeitig wiederverwendeten Blocks
+                    if (validate(segment, address, stamp)) {
+                        System.out.println("No object at this address");
+                        return null;
+                    }
+                    stamp = tryOptimisticRead(segment, address);
+                    continue;
+                }
+                try {
+                    object = decode(codec, address + lengthfieldsize + tagsize, objectsize);
+                } catch (RuntimeException e) {                  //Codec kann an gleichzeitig veraenderten Daten scheitern
+                    if (validate(segment, address, stamp)) throw e;
+                }
+                if (validate(segment, address, stamp)) {
                     return object;
                 }
+                stamp = tryOptimisticRead(segment, address);
             }
             stamp = segment.lock.readLock();                    //falls optimistischer Lesezugriff nicht erfolgreich war wird stattdessen ein regulaerer Lesezugriff durchgefuehrt
             try {
                 int lengthfieldsize = readMarkerLowerBits(address - 1);
-                if ((lengthfieldsize >= 1 && lengthfieldsize <= 3) || lengthfieldsize == 0 || lengthfieldsize == 15) {
+                if (!isUsedMarker(lengthfieldsize)) {
                     System.out.println("No object at this address");
                     return null;
                 } else {
                     lengthfieldsize -= 8;
                 }
-                int objectsize = readLengthField(address, lengthfieldsize);
-                object = readByteArray(address + lengthfieldsize, objectsize);
+                if (tagsize > 0 && readGeneration(address) != generation) {
+                    System.out.println("Stale address");
+                    return null;
+                }
+                int objectsize = readObjectSize(address, lengthfieldsize);
+                if (objectsize < 0 || address + lengthfieldsize + tagsize + objectsize > segment.endaddress) {    //Adresse zeigt nicht auf einen Blockanfang
+                    System.out.println("No object at this address");
+                    return null;
+                }
+                object = decode(codec, address + lengthfieldsize + tagsize, objectsize);
 
             } finally {
                 segment.lock.unlockRead(stamp);
@@ -371,11 +1361,213 @@ public class MemoryManager {
         return object;
     }
 
+    public int readInto(long address, byte[] destination, int offset){      //kopiert Objekt in das uebergebene Array, liefert Objektgroesse
+        return readInto(address, destination, offset, null);
+    }
+
+    public int readInto(long address, ByteBuffer destination){              //kopiert Objekt ab der aktuellen Position in den Buffer
+        return readInto(address, null, 0, destination);
+    }
+
+    private int readInto(long address, byte[] destination, int offset, ByteBuffer buffer){
+        if(tagsize > 0) {
+            address = untag(address);
+            if(address == 0) return -1;
+        }
+        if(slaballocator != null) {
+            Slab slab = slaballocator.findSlab(address);
+            if(slab != null) {
+                slab.lockSlot(address);                         //Slots werden kurz kopiert, Leser sperren daher den Streifen
+                try {
+                    int objectsize = slaballocator.readSize(slab, address);
+                    checkCapacity(objectsize, destination, offset, buffer);
+                    if(objectsize >= 0) copyData(address + 1, objectsize, destination, offset, buffer);
+                    return objectsize;
+                } finally {
+                    slab.unlockSlot(address, false);
+                }
+            }
+        }
+        SegmentHeader segment = getSegmentByAddress(address);
+        if(segment == null) return -1;
+        int objectsize;
+        long stamp = tryOptimisticRead(segment, address);          //versucht zunächst optimistischen Lesezugriff
+        for (int i = 0; i < 3; i++) {
+            objectsize = copyObject(address, destination, offset, buffer);
+            if (validate(segment, address, stamp)) {
+                checkCapacity(objectsize, destination, offset, buffer);
+                if(buffer != null && objectsize > 0) buffer.position(buffer.position() + objectsize);
+                return objectsize;
+            }
+            stamp = tryOptimisticRead(segment, address);
+        }
+        stamp = segment.lock.readLock();
+        try {
+            objectsize = copyObject(address, destination, offset, buffer);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+        checkCapacity(objectsize, destination, offset, buffer);
+        if(buffer != null && objectsize > 0) buffer.position(buffer.position() + objectsize);
+        return objectsize;
+    }
+
+    private int copyObject(long address, byte[] destination, int offset, ByteBuffer buffer){     //kopiert nur, wenn das Objekt in das Ziel passt
+        int marker = readMarkerLowerBits(address - 1);
+        if (!isUsedMarker(marker)) {
+            System.out.println("No object at this address");
+            return -1;
+        }
+        int lengthfieldsize = marker - 8;
+        int objectsize = readObjectSize(address, lengthfieldsize);
+        if (fits(objectsize, destination, offset, buffer)) {
+            if (buffer != null) {
+                int position = buffer.position();
+                copyData(address + lengthfieldsize + tagsize, objectsize, null, 0, buffer);
+                buffer.position(position);                      //Position wird erst nach erfolgreicher Validierung verschoben
+            } else {
+                copyData(address + lengthfieldsize + tagsize, objectsize, destination, offset, null);
+            }
+        }
+        return objectsize;
+    }
+
+    private boolean fits(int objectsize, byte[] destination, int offset, ByteBuffer buffer){
+        if(buffer != null) return objectsize <= buffer.remaining();
+        return offset >= 0 && objectsize <= destination.length - offset;
+    }
+
+    private void checkCapacity(int objectsize, byte[] destination, int offset, ByteBuffer buffer){
+        if(objectsize < 0 || fits(objectsize, destination, offset, buffer)) return;
+        if(buffer != null) throw new BufferOverflowException();
+        throw new IndexOutOfBoundsException("Object of " + objectsize + " bytes does not fit at offset " + offset);
+    }
+
+    void copyData(long address, int size, byte[] destination, int offset, ByteBuffer buffer){
+        if(buffer != null) {
+            getRegion(address).copyToBuffer(address + getRegionOffset(address), buffer, size);
+        } else {
+            getRegion(address).copyToArray(address + getRegionOffset(address), destination, offset, size);
+        }
+    }
+
+    public byte[] readRange(long address, int offset, int length){        //liest length Bytes ab offset innerhalb des Objekts
+        byte[] destination = new byte[length];
+        return readRange(address, offset, destination, 0, length) < 0 ? null : destination;
+    }
+
+    public int readRange(long address, int offset, byte[] destination, int destinationoffset, int length){     //liefert Objektgroesse oder -1
+        Objects.checkFromIndexSize(destinationoffset, length, destination.length);
+        if(tagsize > 0) {
+            address = untag(address);
+            if(address == 0) return -1;
+        }
+        if(slaballocator != null) {
+            Slab slab = slaballocator.findSlab(address);
+            if(slab != null) {
+                slab.lockSlot(address);
+                try {
+                    int objectsize = slaballocator.readSize(slab, address);
+                    checkRange(objectsize, offset, length);
+                    if(objectsize >= 0) copyData(address + 1 + offset, length, destination, destinationoffset, null);
+                    return objectsize;
+                } finally {
+                    slab.unlockSlot(address, false);
+                }
+            }
+        }
+        SegmentHeader segment = getSegmentByAddress(address);
+        if(segment == null) {
+            System.out.println("Unknown Address");
+            return -1;
+        }
+        int objectsize;
+        long stamp = tryOptimisticRead(segment, address);          //versucht zunächst optimistischen Lesezugriff
+        for (int i = 0; i < 3; i++) {
+            objectsize = copyRange(address, offset, destination, destinationoffset, length);
+            if (validate(segment, address, stamp)) {
+                checkRange(objectsize, offset, length);
+                return objectsize;
+            }
+            stamp = tryOptimisticRead(segment, address);
+        }
+        stamp = segment.lock.readLock();
+        try {
+            objectsize = copyRange(address, offset, destination, destinationoffset, length);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+        checkRange(objectsize, offset, length);
+        return objectsize;
+    }
+
+    public void writeRange(long address, int offset, byte[] data){          //ueberschreibt nur den Bereich ab offset innerhalb des Objekts
+        if(tagsize > 0) {
+            address = untag(address);
+            if(address == 0) return;
+        }
+        if(slaballocator != null) {
+            Slab slab = slaballocator.findSlab(address);
+            if(slab != null) {
+                slab.lockSlot(address);
+                try {
+                    int objectsize = slaballocator.readSize(slab, address);
+                    checkRange(objectsize, offset, data.length);
+                    if(objectsize >= 0) writeByteArray(address + 1 + offset, data);
+                } finally {
+                    slab.unlockSlot(address, true);
+                }
+                return;
+            }
+        }
+        SegmentHeader segment = getSegmentByAddress(address);
+        if(segment == null) {
+            System.out.println("Unknown Address");
+            return;
+        }
+        long stamp = segment.lock.writeLock();
+        try {
+            int marker = readMarkerLowerBits(address - 1);
+            if(!isUsedMarker(marker)) {
+                System.out.println("No object at this address");
+                return;
+            }
+            int objectsize = readObjectSize(address, marker - 8);
+            checkRange(objectsize, offset, data.length);
+            beginBlockWrite(segment, address);
+            try {
+                writeByteArray(address + marker - 8 + tagsize + offset, data);
+            } finally {
+                endBlockWrite(segment, address);
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    private int copyRange(long address, int offset, byte[] destination, int destinationoffset, int length){   //kopiert nur, wenn der Bereich im Objekt liegt
+        int marker = readMarkerLowerBits(address - 1);
+        if (!isUsedMarker(marker)) {
+            System.out.println("No object at this address");
+            return -1;
+        }
+        int objectsize = readObjectSize(address, marker - 8);
+        if (offset >= 0 && length <= objectsize - offset) {
+            copyData(address + marker - 8 + tagsize + offset, length, destination, destinationoffset, null);
+        }
+        return objectsize;
+    }
+
+    private void checkRange(int objectsize, int offset, int length){
+        if(objectsize < 0 || (offset >= 0 && length <= objectsize - offset)) return;
+        throw new IndexOutOfBoundsException("Range of " + length + " bytes at offset " + offset + " exceeds object of " + objectsize + " bytes");
+    }
+
     public void createFreeBlock(long address, int size, long next, long prev){
         int lengthfieldsize = getFreeBlockMarkerValue(size);
         writeLengthField(address, size, lengthfieldsize);
         writeAddressField(address + lengthfieldsize, next);
-        writeAddressField(address + lengthfieldsize + ADDRESS_SIZE, prev);
+        writeAddressField(address + lengthfieldsize + addresssize, prev);
         writeLengthField(address + size - lengthfieldsize, size, lengthfieldsize);
 
     }
@@ -386,7 +1578,7 @@ public class MemoryManager {
 
         if(markervalue == 15){
             writeMarkerLowerBits(newblockaddress - 1, markervalue);
-            writeMarkerUpperBits(newblockaddress, markervalue);
+            writeMarkerUpperBits(newblockaddress + 1, markervalue);
         }
         else if(markervalue == 0){
             writeMarkerLowerBits(newblockaddress - 1, markervalue);
@@ -419,7 +1611,8 @@ public class MemoryManager {
         long block = anchor;
         while(block != 0){
             int lengthfieldsize = readMarkerLowerBits(block - 1);
-            if(readLengthField(block, lengthfieldsize) >= size)
+            int blocksize = readLengthField(block, lengthfieldsize);
+            if(blocksize == size || blocksize >= size + 2)                //bei einem Rest von 1B bliebe kein Platz fuer einen Block
                 return block;
             else
                 block = getNextFreeBlock(block);
@@ -428,21 +1621,15 @@ public class MemoryManager {
     }
 
     public long getNextBlock(long address){                         //berechnet Adresse des naechsten Blocks
+        return address + getBlockSize(address) + 1;
+    }
+
+    public int getBlockSize(long address){                          //berechnet Groesse des Blocks inklusive Laengenfeldern
         int marker = readMarkerLowerBits(address - 1);
-        int blocksize;
-        if(marker == 0){
-            blocksize = readLengthField(address, 1);
-            return address + blocksize + 1;
-        } else if(marker == 15){
-            return address + 1;
-        } else {
-            if (isBlockUsed(address)) marker -= 8;
-            blocksize = readLengthField(address, marker);
-            if (isBlockUsed(address)) {
-                return address + blocksize + 2 * (marker - 8) + 1;
-            }
-            return address + blocksize + 1;
-        }
+        if(marker == 0) return readLengthField(address, 1);
+        else if(marker == 15) return 1;
+        else if(isUsedMarker(marker)) return readLengthField(address, marker - 8) + 2 * (marker - 8);
+        else return readLengthField(address, marker);
     }
 
     public long getPreviousBlock(long address){                     //berechnet Adresse des vorherigen Blocks
@@ -452,10 +1639,10 @@ public class MemoryManager {
             blocksize = readLengthField(address - 2, 1);
             return address - blocksize - 1;
         } else if(marker == 15){
-            return address - 1;
+            return address - 2;
         }
         else {
-            if (marker >= 9 && marker <= 11) {
+            if (isUsedMarker(marker)) {
                 marker -= 8;
             }
             blocksize = readLengthField((address - 1 - marker), marker);
@@ -471,100 +1658,137 @@ public class MemoryManager {
 
     public boolean isPreviousBlockFree(long address){
         int prevmarker = readMarkerUpperBits(address-1);
-        return ((prevmarker >=1 && prevmarker <= 3) || prevmarker == 0 || prevmarker == 15);
+        return ((prevmarker >= 0 && prevmarker <= 4) || prevmarker == 15);
     }
 
     public boolean isPreviousBlockUsed(long address){
         int prevmarker = readMarkerUpperBits(address-1);
-        return ((prevmarker >=9 && prevmarker <= 11));
+        return isUsedMarker(prevmarker);
     }
 
 
     public boolean isNextBlockFree(long address){
-        int lengthfieldsize = readMarkerLowerBits(address - 1);
-        if(isBlockUsed(address)){
-            lengthfieldsize -= 8;
-        }
-        int blocksize = readLengthField(address, lengthfieldsize);
-        if(isBlockUsed(address)){
-            blocksize += 2 * lengthfieldsize;
-        }
-        int nextmarker = readMarkerLowerBits(address + blocksize);
-        return (nextmarker >=0 && nextmarker <= 3);
+        return isBlockFree(getNextBlock(address));
+    }
+
+    public boolean isBlockFree(long address){
+        int marker = readMarkerLowerBits(address - 1);
+        return ((marker >= 0 && marker <= 4) || marker == 15);
+    }
+
+    private boolean isListedFreeBlock(long address){                //nur freie Bloecke mit Adressfeldern sind Teil einer Freispeicherliste
+        int marker = readMarkerLowerBits(address - 1);
+        return (marker >= 1 && marker <= 4);
     }
 
     private boolean isBlockUsed(long address){
         int marker = readMarkerLowerBits(address - 1);
-        return (marker >= 9 && marker <= 11);
+        return isUsedMarker(marker);
     }
 
-    //Segmente
+    public static boolean isUsedMarker(int marker){                 //Marker belegter Bloecke: 8 + Groesse des Laengenfelds
+        return (marker >= 9 && marker <= 12);
+    }
 
-    private SegmentHeader findSegment(){
-        int index = 0;
+    //Segmente
 
-        for(int i = 0; i < segments; i++){
-            if(segmentlist[i].usedspace < segmentlist[index].usedspace) index = i;      //gibt Segment mit dem wenigsten belegten Speicher zurueck
+    private long writeLockSegment(SegmentHeader[] list, int[] home){        //sperrt das Heimsegment, ist es belegt wird ein freies Nachbarsegment gesucht
+        SegmentHeader segment = list[home[0]];
+        long stamp = segment.lock.tryWriteLock();
+        if(stamp != 0) return stamp;
+        int probes = Math.min(NEIGHBOUR_PROBES, list.length - 1);
+        for(int i = 1; i <= probes; i++){
+            int neighbour = (home[0] + i) % list.length;
+            stamp = list[neighbour].lock.tryWriteLock();
+            if(stamp != 0) {
+                home[0] = neighbour;                    //Thread wechselt zum weniger umkaempften Segment
+                return stamp;
+            }
         }
-        return segmentlist[index];
+        return segment.lock.writeLock();                //alle Nachbarn belegt, es wird auf das Heimsegment gewartet
     }
 
-    private SegmentHeader getSegmentByAddress(long address){
-        for(int i = 0; i < segments; i++){
-            if(address >= segmentlist[i].startaddress && address < segmentlist[i].endaddress){
-                return segmentlist[i];
+    private int findLeastUsedSegment(SegmentHeader[] list, boolean[] excluded){
+        int index = -1;
+        long minused = Long.MAX_VALUE;
+        for(int i = 0; i < list.length; i++){
+            if(excluded[i]) continue;
+            long used = list[i].usedspace.sum();
+            if(used < minused) {                        //gibt Segment mit dem wenigsten belegten Speicher zurueck
+                minused = used;
+                index = i;
             }
         }
+        return index;
+    }
+
+    private SegmentHeader getSegmentByAddress(long address){        //berechnet Segment aus Bereich und Segmentabstand in O(1)
+        if(address < 0) return null;
+        SegmentHeader[] list = segmentlist;
+        long segment = (address & ((1L << regionshift) - 1)) / segmentstride;
+        if(segment >= segments) return null;                                //Rest am Ende eines Bereichs gehoert zu keinem Segment
+        long index = (address >>> regionshift) * segments + segment;
+        if(index >= list.length) return null;
+        SegmentHeader header = list[(int) index];
+        return address > header.startaddress && address < header.endaddress ? header : null;   //startaddress traegt nur den ersten Marker, 0 ist nie ein Block
+    }
 
-        return null;
+    private OffHeapAccess getRegion(long address){
+        return regions[(int) (address >>> regionshift)];
+    }
+
+    private long getRegionOffset(long address){
+        return regionoffsets[(int) (address >>> regionshift)];
     }
 
     //Laengenfeld
 
     public void writeLengthField(long address, int size, int fieldsize){
-
-        byte[] buffer = ByteBuffer.allocate(Integer.BYTES).putInt(size).array();
-        int counter = 0;
-        for(int i = Integer.BYTES - fieldsize; i < Integer.BYTES; i++){                     //schreibt nur so viele Bytes wie bnoetigt werden
-            offHeapAccess.writeByte(address + counter + addressoffset, buffer[i]);
-            counter++;
+        markDirty(address, fieldsize);
+        if(fieldsize == Integer.BYTES) {                                                    //Layout v2, Feld wird mit einem Zugriff geschrieben
+            getRegion(address).writeInt(address + getRegionOffset(address), size);
+            return;
+        }
+        for(int i = 0; i < fieldsize; i++){                                                 //schreibt nur so viele Bytes wie benoetigt werden
+            getRegion(address).writeByte(address + i + getRegionOffset(address), (byte) (size >>> (8 * (fieldsize - 1 - i))));
         }
     }
 
     public int readLengthField(long address, int lengthfieldsize){
-        byte[] convert = new byte[Integer.BYTES];
-        int counter = 0;
-        for(int i = Integer.BYTES - lengthfieldsize; i < Integer.BYTES; i++){           //schreibt Bytes so in das Array dass ByteBuffer richtig konvertieren kann
-            convert[i] = offHeapAccess.readByte(address + counter + addressoffset);
-            counter++;
+        if(lengthfieldsize == Integer.BYTES) {
+            return getRegion(address).readInt(address + getRegionOffset(address));
         }
-        return ByteBuffer.allocate(Integer.BYTES).put(convert).flip().getInt();
+        int value = 0;
+        for(int i = 0; i < lengthfieldsize; i++){                                           //setzt das Feld hoechstwertiges Byte zuerst zusammen
+            value = (value << 8) | (getRegion(address).readByte(address + i + getRegionOffset(address)) & 0xFF);
+        }
+        return value;
     }
 
     //Adresslogik
 
 
     public void writeAddressField(long address, long value){
-
-        byte[] bytearray = ByteBuffer.allocate(Long.BYTES).putLong(value).array();
-        int counter = 0;
-        for(int i = Long.BYTES - ADDRESS_SIZE; i < Long.BYTES; i++){                    //schreibt die 5 Byte der Adresse in dn Speicher
-            offHeapAccess.writeByte(address + counter + addressoffset, bytearray[i]);
-            counter++;
+        markDirty(address, addresssize);
+        if(addresssize == Long.BYTES) {
+            getRegion(address).writeLong(address + getRegionOffset(address), value);
+            return;
+        }
+        for(int i = 0; i < ADDRESS_SIZE; i++){                                              //schreibt die 5 Byte der Adresse in den Speicher
+            getRegion(address).writeByte(address + i + getRegionOffset(address), (byte) (value >>> (8 * (ADDRESS_SIZE - 1 - i))));
         }
 
     }
 
     public long readAddressField(long address){
-
-        int counter = 0;
-
-        byte[] bytearray = new byte[Long.BYTES];
-        for(int i = Long.BYTES - ADDRESS_SIZE; i < Long.BYTES; i++){                //schreibt Bytes so in das Array dass ByteBuffer richtig konvertieren kann
-            bytearray[i] = offHeapAccess.readByte(address + counter + addressoffset);
-            counter++;
+        if(addresssize == Long.BYTES) {
+            return getRegion(address).readLong(address + getRegionOffset(address));
         }
-        return ByteBuffer.allocate(Long.BYTES).put(bytearray).flip().getLong();
+        long value = 0;
+        for(int i = 0; i < ADDRESS_SIZE; i++){
+            value = (value << 8) | (getRegion(address).readByte(address + i + getRegionOffset(address)) & 0xFF);
+        }
+        return value;
 
     }
 
@@ -575,33 +1799,38 @@ public class MemoryManager {
 
     private long getPreviousFreeBlock(long address){
         int lengthfieldsize = readMarkerLowerBits(address-1);
-        return readAddressField(address + lengthfieldsize + ADDRESS_SIZE);
+        return readAddressField(address + lengthfieldsize + addresssize);
     }
 
-    private void removeBlockFromFreeBlockList(long address){
+    private void removeBlockFromFreeBlockList(SegmentHeader segment, long address){
+        if(trimmarks) clearTrimMark(address);                                                       //Block wird vergeben, geteilt oder verschmolzen
         long nextblock = getNextFreeBlock(address);
         long prevblock = getPreviousFreeBlock(address);
-        if(nextblock != 0 && prevblock == 0) {                                                      //Block ist erste Element der Liste
-            int nextblocklengthfield = readMarkerLowerBits(nextblock - 1);
-            writeAddressField(nextblock + nextblocklengthfield + ADDRESS_SIZE, prevblock);
-        }
-        else if(nextblock == 0 && prevblock != 0) {                                                 //Block ist letztes Element der Liste
+        if(prevblock == 0) {                                                                        //Block ist erstes Element der Liste, Nachfolger wird neuer Anker
+            int lengthfieldsize = readMarkerLowerBits(address - 1);
+            segment.setListAnchor(segment.findExactBlockList(readLengthField(address, lengthfieldsize)), nextblock);
+        } else {
             int prevblocklengthfield = readMarkerLowerBits(prevblock - 1);
             writeAddressField(prevblock + prevblocklengthfield, nextblock);
         }
-        else {                                                                                      //veraendert Zeiger so dass Block nicht mehr Teil der Freispeicherliste ist
+        if(nextblock != 0) {                                                                        //veraendert Zeiger so dass Block nicht mehr Teil der Freispeicherliste ist
             int nextblocklengthfield = readMarkerLowerBits(nextblock - 1);
-            writeAddressField(nextblock + nextblocklengthfield + ADDRESS_SIZE, prevblock);
-            int prevblocklengthfield = readMarkerLowerBits(prevblock - 1);
-            writeAddressField(prevblock + prevblocklengthfield, nextblock);
+            writeAddressField(nextblock + nextblocklengthfield + addresssize, prevblock);
         }
     }
 
+    private void clearTrimMark(long address){                   //nur Bloecke ab MIN_TRIM_SIZE koennen markiert sein
+        int lengthfieldsize = readMarkerLowerBits(address - 1);
+        if(readLengthField(address, lengthfieldsize) < MIN_TRIM_SIZE) return;
+        long mark = address + lengthfieldsize + 2 * addresssize;
+        if(readLong(mark) == (TRIM_MARK ^ address)) writeLong(mark, 0);
+    }
+
     private void changeListAnchor(SegmentHeader segment, int list, long newanchor){
         long oldanchor = segment.getListAnchor(list);
         if(oldanchor != 0) {
             int oldlengthfieldsize = readMarkerLowerBits(oldanchor - 1);
-            writeAddressField(oldanchor + oldlengthfieldsize + ADDRESS_SIZE, newanchor); //Vorgaenger des alten Ankers ist neuer Anker
+            writeAddressField(oldanchor + oldlengthfieldsize + addresssize, newanchor); //Vorgaenger des alten Ankers ist neuer Anker
             int newlengthfieldsize = readMarkerLowerBits(newanchor - 1);
             writeAddressField(newanchor + newlengthfieldsize, oldanchor);
         }
@@ -611,13 +1840,13 @@ public class MemoryManager {
     //Markerlogik
 
     public int readMarkerUpperBits(long address){
-        byte marker = offHeapAccess.readByte(address + addressoffset);
+        byte marker = getRegion(address).readByte(address + getRegionOffset(address));
         int value = marker & 0xFF;
         return (byte) (value >>> 4);
     }
 
     public int readMarkerLowerBits(long address){
-        byte marker = offHeapAccess.readByte(address + addressoffset);
+        byte marker = getRegion(address).readByte(address + getRegionOffset(address));
         int value = marker & 0xFF;
         return  (value & 0xF);
     }
@@ -626,53 +1855,219 @@ public class MemoryManager {
         int lowerbits = readMarkerLowerBits(address);
         byte marker = (byte) (value << 4);
         marker = (byte) (marker | lowerbits);
-        offHeapAccess.writeByte(address + addressoffset, marker);
+        markDirty(address, 1);
+        getRegion(address).writeByte(address + getRegionOffset(address), marker);
     }
 
     public void writeMarkerLowerBits(long address, byte value){
-        byte marker = offHeapAccess.readByte(address + addressoffset);
+        byte marker = getRegion(address).readByte(address + getRegionOffset(address));
         marker = (byte) (marker & 0xF0);
         marker = (byte) (marker | value);
-        offHeapAccess.writeByte(address + addressoffset, marker);
+        markDirty(address, 1);
+        getRegion(address).writeByte(address + getRegionOffset(address), marker);
     }
 
 
     private byte getFreeBlockMarkerValue(int size){
 
         if(size == 1) return 15;
-        else if(size < 12) return 0;
+        else if(size < minfreeblocksize) return 0;
+        else if(layout == LAYOUT_V2) return 4;
         else if(size < 256) return 1;
         else if(size < 65536) return 2;
         else return 3;
     }
 
     private byte getUsedBlockMarkerValue(long size){
-        if(size < 256) return 9;
+        if(layout == LAYOUT_V2) return 12;
+        else if(size < 256) return 9;
         else if(size < 65536) return 10;
         else return 11;
     }
 
+    public int getAddressSize(){
+        return addresssize;
+    }
+
     public void writeByte(long address, byte value){
-        offHeapAccess.writeByte(address + addressoffset, value);
+        markDirty(address, 1);
+        getRegion(address).writeByte(address + getRegionOffset(address), value);
     }
 
+    public byte readByte(long address){
+        return getRegion(address).readByte(address + getRegionOffset(address));
+    }
 
-    public void writeByteArray(long address, byte[] value){
-        for(int i = 0; i < value.length; i++){
-            offHeapAccess.writeByte(address + i + addressoffset, value[i]);
+    //Feldzugriffe ohne Sperre, Seite wird erst nach dem Schreiben markiert, damit ein laufender Checkpoint sie nicht verliert
+
+    public void writeShort(long address, short value){
+        getRegion(address).writeShort(address + getRegionOffset(address), value);
+        markDirty(address, Short.BYTES);
+    }
+
+    public short readShort(long address){
+        return getRegion(address).readShort(address + getRegionOffset(address));
+    }
+
+    public void writeInt(long address, int value){
+        getRegion(address).writeInt(address + getRegionOffset(address), value);
+        markDirty(address, Integer.BYTES);
+    }
+
+    public int readInt(long address){
+        return getRegion(address).readInt(address + getRegionOffset(address));
+    }
+
+    public void writeLong(long address, long value){
+        getRegion(address).writeLong(address + getRegionOffset(address), value);
+        markDirty(address, Long.BYTES);
+    }
+
+    public long readLong(long address){
+        return getRegion(address).readLong(address + getRegionOffset(address));
+    }
+
+    public void writeDouble(long address, double value){
+        getRegion(address).writeDouble(address + getRegionOffset(address), value);
+        markDirty(address, Double.BYTES);
+    }
+
+    public double readDouble(long address){
+        return getRegion(address).readDouble(address + getRegionOffset(address));
+    }
+
+    public int getObjectSize(long address){                     //liefert Groesse des Objekts an der Adresse oder -1
+        if(tagsize > 0) {
+            address = untag(address);
+            if(address == 0) return -1;
+        }
+        if(slaballocator != null) {
+            Slab slab = slaballocator.findSlab(address);
+            if(slab != null) return slaballocator.readSize(slab, address);
+        }
+        int marker = getSegmentByAddress(address) != null ? readMarkerLowerBits(address - 1) : 0;
+        if(!isUsedMarker(marker)) {
+            System.out.println("No object at this address");
+            return -1;
+        }
+        return readObjectSize(address, marker - 8);
+    }
+
+    int readObjectSize(long address){                           //Objektgroesse eines belegten Blocks ohne Pruefung der Adresse
+        return readObjectSize(address, readMarkerLowerBits(address - 1) - 8);
+    }
+
+    private int readObjectSize(long address, int lengthfieldsize){      //Laengenfelder umfassen auch die Generation
+        return readLengthField(address, lengthfieldsize) - tagsize;
+    }
+
+    public long getObjectAddress(long address){                 //Adresse der Daten eines Objekts in einem Block oder Slab
+        if(tagsize > 0) address &= ADDRESS_MASK;
+        if(slaballocator != null && slaballocator.findSlab(address) != null) return address + 1;
+        return getDataAddress(address);
+    }
+
+    public long getDataAddress(long address){                   //Adresse der Daten eines belegten Blocks
+        return address + readMarkerLowerBits(address - 1) - 8 + tagsize;
+    }
+
+    private long tag(long address){                             //traegt die Generation des Blocks in die Adresse ein
+        if(tagsize == 0 || address == 0) return address;
+        return address | (long) readGeneration(address) << GENERATION_SHIFT;
+    }
+
+    private long untag(long address){                           //entfernt die Generation, liefert 0 fuer Adressen freigegebener Bloecke
+        long blockaddress = address & ADDRESS_MASK;
+        if(getSegmentByAddress(blockaddress) == null) return blockaddress;
+        if(!isBlockUsed(blockaddress)) {
+            System.out.println("No object at this address");
+            return 0;
         }
+        if(readGeneration(blockaddress) != address >>> GENERATION_SHIFT) {
+            System.out.println("Stale address");
+            return 0;
+        }
+        return blockaddress;
+    }
+
+    private int readGeneration(long address){
+        return readShort(address + readMarkerLowerBits(address - 1) - 8) & 0xFFFF;
+    }
+
+    private void advanceGeneration(long address){               //macht alle bisher ausgegebenen Adressen des Blocks ungueltig
+        if(getSegmentByAddress(address) == null || !isBlockUsed(address)) return;
+        writeShort(address + readMarkerLowerBits(address - 1) - 8, (short) nextGeneration(readGeneration(address)));
+    }
+
+    private static int nextGeneration(int generation){          //0 wird ausgelassen, damit Adressen ohne Generation nie passen
+        return generation >= 0xFFFF ? 1 : generation + 1;
+    }
+
+
+    public void writeByteArray(long address, byte[] value){
+        markDirty(address, value.length);
+        getRegion(address).copyFromArray(value, 0, address + getRegionOffset(address), value.length);
+    }
+
+    <T> void encode(T object, Codec<T> codec, long address, int objectsize){
+        markDirty(address, objectsize);
+        if(codec != null) codec.encode(object, getRegion(address), address + getRegionOffset(address));
+    }
+
+    <T> T decode(Codec<T> codec, long address, int objectsize){
+        return codec.decode(getRegion(address), address + getRegionOffset(address), objectsize);
+    }
+
+    void copyToBuffer(long address, ByteBuffer destination, int length){
+        getRegion(address).copyToBuffer(address + getRegionOffset(address), destination, length);
+    }
+
+    private void markDirty(long address, int length){         //vermerkt Schreibzugriff fuer den naechsten Checkpoint
+        if(checkpoint != null) checkpoint.markDirty(address, length);
     }
 
     public byte[] readByteArray(long address, int size){
         byte[] value = new byte[size];
-        for(int i = 0; i < size; i++){
-            value[i] = offHeapAccess.readByte(address + i + addressoffset);
-        }
+        getRegion(address).copyToArray(address + getRegionOffset(address), value, 0, size);
         return value;
     }
 
-    public void cleanup(){
-        offHeapAccess.freeMemory(addressoffset);
+    public void sync(){                                         //schreibt Segmentkoepfe in die Heapdatei und diese auf den Datentraeger
+        if(mappedheap == null) return;
+        coalesce();
+        for(int i = 0; i < segments; i++){                      //persistente Heaps bestehen aus genau einem Bereich
+            SegmentHeader segment = segmentlist[i];
+            long stamp = segment.lock.readLock();
+            try {
+                mappedheap.writeSegment(i, segment);
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        mappedheap.force();
+    }
+
+    public void cleanup(){                                      //alle anderen Threads muessen ihre Zugriffe beendet haben
+        synchronized (threadcacheregistry) {                    //Bloecke in Thread-Caches werden vor dem Sichern zurueckgegeben
+            for(ThreadCache cache : threadcacheregistry) cache.flush();
+            threadcacheregistry.clear();
+        }
+        if(trimexecutor != null) trimexecutor.shutdownNow();
+        if(coalescerexecutor != null) coalescerexecutor.shutdownNow();
+        if(compactorexecutor != null) compactorexecutor.shutdownNow();
+        sync();
+        if(mappedheap != null) mappedheap.writeCleanShutdown(true);      //Kopfbereich ist jetzt aktuell
+        if(checkpoint != null) {
+            try {
+                checkpoint.close();
+            } catch (IOException e) {
+                System.out.println("Checkpoint could not be closed");
+            }
+        }
+        for(int i = 0; i < regioncount; i++){
+            regions[i].freeMemory(regions[i].getStartAddress());
+        }
+        if(handletable != null) handletable.free();
     }
 
 
@@ -1,6 +1,8 @@
 import sun.misc.Unsafe;
 
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 public class OffHeap implements OffHeapAccess {
 
@@ -9,6 +11,8 @@ public class OffHeap implements OffHeapAccess {
 
 
     public Unsafe unsafe;
+    private static final int BUFFER_COPY_CHUNK = 8192;     //direkte Buffer werden abschnittsweise ueber ein Array befuellt
+    private static final ThreadLocal<byte[]> buffercopychunk = ThreadLocal.withInitial(() -> new byte[BUFFER_COPY_CHUNK]);   //je Thread einmal angelegt
 
     public OffHeap(long size) throws NoSuchFieldException, IllegalAccessException {
         this.unsafe = initUnsafe();
@@ -19,6 +23,16 @@ public class OffHeap implements OffHeapAccess {
 
 
 
+    @Override
+    public long getStartAddress(){
+        return startaddress;
+    }
+
+    @Override
+    public long getSize(){
+        return size;
+    }
+
     private Unsafe initUnsafe() throws NoSuchFieldException, IllegalAccessException {  //Funktion zur Initialisierung der Unsafe Instanz
         Field f = Unsafe.class.getDeclaredField("theUnsafe");
         f.setAccessible(true);
@@ -110,4 +124,36 @@ public class OffHeap implements OffHeapAccess {
         return unsafe.getBoolean(null, address);
     }
 
+    @Override
+    public void copyToArray(long address, byte[] destination, int offset, int length){     //kopiert Speicherbereich in ein Byte Array
+        unsafe.copyMemory(null, address, destination, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, length);
+    }
+
+    @Override
+    public void copyFromArray(byte[] source, int offset, long address, int length){        //kopiert Byte Array in den OffHeap
+        unsafe.copyMemory(source, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, null, address, length);
+    }
+
+    @Override
+    public void copyToBuffer(long address, ByteBuffer destination, int length){
+        if(destination.isReadOnly()) throw new ReadOnlyBufferException();
+        int position = destination.position();
+        if(destination.hasArray()) {
+            copyToArray(address, destination.array(), destination.arrayOffset() + position, length);
+            destination.position(position + length);
+        } else {                                                                             //direkter Buffer, ohne Zugriff auf seine interne Adresse
+            byte[] chunk = buffercopychunk.get();
+            for(int copied = 0; copied < length; copied += chunk.length){
+                int count = Math.min(chunk.length, length - copied);
+                copyToArray(address + copied, chunk, 0, count);
+                destination.put(chunk, 0, count);
+            }
+        }
+    }
+
+    @Override
+    public void copyMemory(long source, long destination, long length){
+        unsafe.copyMemory(source, destination, length);
+    }
+
 }
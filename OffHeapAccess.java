@@ -1,9 +1,14 @@
 // Interface zur Implementierung des Zugriffs auf den OffHeap.
 // Die Funktionen sollen dazu dienen dazu, Primitive Datentypen/Objekte in den OffHeap zu schreiben oder zu lesen.
 
+import java.nio.ByteBuffer;
 
 public interface OffHeapAccess {
 
+    long getStartAddress();
+
+    long getSize();
+
     void writeInt(long address, int value);
 
     void writeLong(long address, long value);
@@ -36,5 +41,13 @@ public interface OffHeapAccess {
 
     boolean readBoolean(long address);
 
+    void copyToArray(long address, byte[] destination, int offset, int length);
+
+    void copyFromArray(byte[] source, int offset, long address, int length);
+
+    void copyToBuffer(long address, ByteBuffer destination, int length);     //kopiert an die aktuelle Position und verschiebt sie
+
+    void copyMemory(long source, long destination, long length);
+
     void freeMemory(long address);
 }
@@ -0,0 +1,27 @@
+// Interface fuer OffHeaps, die in einer Datei liegen und einen Neustart des Prozesses ueberdauern.
+// Neben dem Zugriff auf den Heap werden die Parameter des MemoryManagers und die Segmentkoepfe im Kopfbereich der Datei
+// gesichert. Die Implementierung (MappedOffHeap) gehoert zum FFM-Backend und wird ueber ForeignBackend geladen.
+
+
+public interface PersistentHeap extends OffHeapAccess {
+
+    boolean isInitialized();                                    //true, falls eine bestehende Heapdatei geoeffnet wurde
+
+    int readLayout();
+
+    int readSegments();
+
+    int readInitBlockSize();
+
+    void writeParameters(int layout, int segments, int initblocksize);
+
+    boolean isCleanShutdown();                                  //false, falls der letzte Prozess cleanup() nicht erreicht hat
+
+    void writeCleanShutdown(boolean clean);
+
+    void writeSegment(int index, SegmentHeader segment);
+
+    SegmentHeader readSegment(int index);
+
+    void force();
+}
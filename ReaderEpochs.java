@@ -0,0 +1,69 @@
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Epochen fuer Leser, die ohne Segmentsperre lesen.
+// Ein Leser traegt beim Betreten die aktuelle globale Epoche in seinen Eintrag ein und loescht sie beim Verlassen.
+// Freigegebene Bloecke werden mit der Epoche ihrer Freigabe zurueckgestellt und erst in die Freispeicherlisten
+// aufgenommen, wenn kein Leser mehr aktiv ist, der in dieser oder einer frueheren Epoche begonnen hat. Bis dahin
+// bleiben Laengenfelder und Daten eines freigegebenen Blocks unveraendert. Eintraege beendeter Threads werden bei der
+// Berechnung der sicheren Epoche entfernt.
+
+
+public class ReaderEpochs {
+
+    private final AtomicLong epoch = new AtomicLong(1);
+    private final CopyOnWriteArrayList<Reader> readers = new CopyOnWriteArrayList<>();    //ein Eintrag je lebendem Thread, der gelesen hat
+    private final ThreadLocal<Reader> reader = ThreadLocal.withInitial(this::register);
+
+    private static final class Reader {
+        volatile long epoch;                    //0 ausserhalb eines Lesezugriffs
+        int depth;                              //Verschachtelungstiefe, nur vom eigenen Thread verwendet
+        long p1, p2, p3, p4, p5, p6;            //Eintraege verschiedener Threads liegen in getrennten Cache-Lines
+        final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());   //haelt beendete Threads nicht am Leben
+
+        boolean isOrphaned(){
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+
+    private Reader register(){
+        Reader entry = new Reader();
+        readers.add(entry);
+        return entry;
+    }
+
+    public void enter(){
+        Reader entry = reader.get();
+        if(entry.depth++ > 0) return;           //Codecs koennen selbst wieder lesen
+        entry.epoch = epoch.get();
+        VarHandle.fullFence();                  //Eintrag muss sichtbar sein, bevor der Block gelesen wird
+    }
+
+    public void exit(){
+        Reader entry = reader.get();
+        if(--entry.depth == 0) entry.epoch = 0;
+    }
+
+    public long getEpoch(){                     //Epoche, mit der ein freigegebener Block zurueckgestellt wird
+        return epoch.get();
+    }
+
+    public long getSafeEpoch(){                 //Bloecke, die vor der gelieferten Epoche zurueckgestellt wurden, liest kein Leser mehr
+        long safe = epoch.incrementAndGet();    //spaeter beginnende Leser halten die Freigabe nicht mehr auf
+        boolean orphaned = false;
+        for(Reader entry : readers){
+            if(entry.isOrphaned()) {            //beendeter Thread liest nicht mehr, auch wenn er exit() nicht erreicht hat
+                orphaned = true;
+                continue;
+            }
+            long entered = entry.epoch;
+            if(entered != 0 && entered < safe) safe = entered;
+        }
+        if(orphaned) readers.removeIf(Reader::isOrphaned);
+        return safe;
+    }
+
+}
@@ -0,0 +1,106 @@
+import java.util.Arrays;
+
+// Arena fuer Objekte mit gemeinsamer Lebensdauer, z.B. alle Daten einer Anfrage.
+// Die Arena holt grosse Bloecke (Chunks) vom MemoryManager und vergibt darin Speicher durch Weiterschieben eines
+// Zeigers ohne Sperre und ohne Grenzmarkierungen. Einzelne Objekte werden nicht freigegeben, reset() und close()
+// geben alle Chunks auf einmal zurueck, je Segment unter einer Sperre. Eine Arena wird nur von einem Thread verwendet.
+//
+// Aufbau eines Objekts im Chunk: Laenge (4B) gefolgt von den Daten, die Adresse eines Objekts zeigt auf die Laenge.
+
+
+public class ScopedArena implements AutoCloseable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 65536;
+
+    private final MemoryManager memoryManager;
+    private final int chunksize;
+    private long[] chunks = new long[8];        //Adressen der Chunks, der erste bleibt bei reset() erhalten
+    private int chunkcount;
+    private long position;                      //naechste freie Adresse im aktuellen Chunk
+    private long limit;                         //Ende des aktuellen Chunks
+    private boolean closed;
+
+    public ScopedArena(MemoryManager memoryManager, int chunksize) {
+        this.memoryManager = memoryManager;
+        this.chunksize = chunksize;
+    }
+
+    public long allocate(byte[] object){
+        long address = reserve(object.length);
+        if(address != 0) memoryManager.writeByteArray(address + Integer.BYTES, object);
+        return address;
+    }
+
+    public <T> long allocate(T object, Codec<T> codec){
+        int objectsize = codec.getEncodedSize(object);
+        long address = reserve(objectsize);
+        if(address != 0) memoryManager.encode(object, codec, address + Integer.BYTES, objectsize);
+        return address;
+    }
+
+    private long reserve(int objectsize){                       //schiebt den Zeiger weiter, liefert Adresse des Objekts oder 0
+        if(closed) {
+            System.out.println("Arena is closed");
+            return 0;
+        }
+        int size = objectsize + Integer.BYTES;
+        long address;
+        if(size > chunksize) {                                  //grosse Objekte erhalten einen eigenen Chunk, der aktuelle bleibt erhalten
+            address = addChunk(size);
+            if(address == 0) return 0;
+        } else {
+            if(position + size > limit) {
+                long chunk = addChunk(chunksize);
+                if(chunk == 0) return 0;
+                position = chunk;
+                limit = chunk + chunksize;
+            }
+            address = position;
+            position += size;
+        }
+        memoryManager.writeInt(address, objectsize);
+        return address;
+    }
+
+    private long addChunk(int size){                            //holt neuen Chunk, liefert Adresse seiner Daten oder 0
+        long chunk = memoryManager.allocateChunk(size);
+        if(chunk == 0) return 0;
+        if(chunkcount == chunks.length) chunks = Arrays.copyOf(chunks, chunkcount * 2);
+        chunks[chunkcount++] = chunk;
+        return memoryManager.getDataAddress(chunk);
+    }
+
+    public byte[] read(long address){
+        return memoryManager.readByteArray(address + Integer.BYTES, memoryManager.readInt(address));
+    }
+
+    public <T> T read(long address, Codec<T> codec){
+        return memoryManager.decode(codec, address + Integer.BYTES, memoryManager.readInt(address));
+    }
+
+    public int getObjectSize(long address){
+        return memoryManager.readInt(address);
+    }
+
+    public long getObjectAddress(long address){                 //Adresse der Daten, z.B. fuer Feldzugriffe
+        return address + Integer.BYTES;
+    }
+
+    public void reset(){                                        //verwirft alle Objekte, der erste Chunk wird wiederverwendet
+        if(chunkcount == 0) return;
+        memoryManager.releaseBlocks(Arrays.copyOfRange(chunks, 1, chunkcount), 0, chunkcount - 1);
+        chunkcount = 1;
+        position = memoryManager.getDataAddress(chunks[0]);
+        limit = position + chunksize;                           //ein eigener Chunk eines grossen Objekts ist groesser als chunksize
+    }
+
+    @Override
+    public void close(){                                        //gibt alle Chunks an den MemoryManager zurueck
+        if(closed) return;
+        memoryManager.releaseBlocks(Arrays.copyOf(chunks, chunkcount), 0, chunkcount);
+        chunkcount = 0;
+        position = limit = 0;
+        closed = true;
+    }
+
+}
@@ -1,65 +1,102 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.StampedLock;
 
 public class SegmentHeader {
 
     public static final int MAXBLOCKSIZE_EXPONENT = 24;
+    public static final int SL_INDEX_COUNT_LOG2 = 3;                       //Freispeicherlisten werden zweistufig indiziert (TLSF):
+    public static final int SL_INDEX_COUNT = 1 << SL_INDEX_COUNT_LOG2;     //erste Stufe Zweierpotenz, zweite Stufe 8 gleich grosse Teilintervalle
+    public static final int VERSION_PADDING = 8;                           //jedes Versionswort liegt in einer eigenen Cache-Line
 
     public long startaddress;
     public long endaddress;
     public long[] freeblocks;
-    public long usedspace;
+    public final LongAdder usedspace;      //gestreifter Zaehler, wird ohne Sperre von anderen Threads gelesen
+    public int flbitmap;                   //Bit i gesetzt, falls eine Liste der ersten Stufe i nicht leer ist
+    public int[] slbitmap;                 //je erste Stufe ein Bit pro nicht leerer Liste der zweiten Stufe
 
     public final StampedLock lock;
+    public int generation;                 //zuletzt vergebene Generation, wird nur unter der Schreibsperre geaendert
+    public FreeQueue deferredfrees;        //null, solange freigegebene Bloecke sofort zusammengefasst werden
+    public AtomicLongArray versions;       //null, solange Leser mit dem Stempel der Segmentsperre validieren
+    public long[] retiredblocks;           //zurueckgestellte Bloecke mit aufsteigender Epoche, nur unter der Schreibsperre geaendert
+    public long[] retiredepochs;
+    public int retiredcount;
+    public Combiner combiner;              //null, solange jeder Thread seine Operation selbst unter der Sperre ausfuehrt
+    private int versionshift;
 
 
     public SegmentHeader(long startaddress, long size) {
         this.startaddress = startaddress;
         this.endaddress = startaddress + size;
-        this.usedspace = 0;
+        this.usedspace = new LongAdder();
         lock = new StampedLock();
-        freeblocks = new long[MAXBLOCKSIZE_EXPONENT+1];
+        freeblocks = new long[(MAXBLOCKSIZE_EXPONENT+1) * SL_INDEX_COUNT];
+        slbitmap = new int[MAXBLOCKSIZE_EXPONENT+1];
     }
 
 
-    public int findFittingBlockList(int size){
-
-        int index = 0;
-
-        if(size >= 12 && size <= 23 && freeblocks[0] != 0 ) index = 0;     //Die ersten Freispeicherlisten besitzen ein anderes Groessenintervall
-        if(size >= 24 && size <= 35 && freeblocks[1] != 0 ) index = 1;      //als die folgenden
-        if(size >= 36 && size <= 47 && freeblocks[2] != 0 ) index = 2;
-        if(size >= 48 && size <= 63 && freeblocks[3] != 0 ) index = 3;
-
-
-
+    public void enableVersions(int stripes){           //legt gestreifte Versionsworte an, stripes wird auf eine Zweierpotenz aufgerundet
+        int count = Integer.highestOneBit(Math.max(stripes - 1, 1)) << 1;
+        versionshift = 64 - Integer.numberOfTrailingZeros(count);
+        versions = new AtomicLongArray(count * VERSION_PADDING);
+    }
 
-        for(int i = 4; i <= MAXBLOCKSIZE_EXPONENT; i++ ){                                       //ab der fuenften Liste wird in der i-ten Liste
-            if(size >= Math.pow(2, i+2) && size < Math.pow(2, i+3)){                            //Bloecke der Groesse 2^(i+1) bis 2^(i+2)-1
-                index = i;                                                                      //gespeichert (Array-Indizes, deshalb erste Liste
-            }                                                                                  //bei i=0)
+    public void retire(long address, long epoch){     //stellt freigegebenen Block zurueck, Aufrufer haelt Schreibsperre
+        if(retiredblocks == null) {
+            retiredblocks = new long[64];
+            retiredepochs = new long[64];
+        } else if(retiredcount == retiredblocks.length) {
+            retiredblocks = Arrays.copyOf(retiredblocks, retiredcount * 2);
+            retiredepochs = Arrays.copyOf(retiredepochs, retiredcount * 2);
         }
-        while(freeblocks[index] == 0) index++;
-
-        return index;
+        retiredblocks[retiredcount] = address;
+        retiredepochs[retiredcount++] = epoch;
     }
 
-    public int findExactBlockList(int size){
-        if(size >= 12 && size <= 23) return 0;     //Die ersten Freispeicherlisten besitzen ein anderes Groessenintervall
-        if(size >= 24 && size <= 35) return 1;     //als die anderen
-        if(size >= 36 && size <= 47) return 2;
-        if(size >= 48 && size <= 63) return 3;
+    public int getVersionIndex(long address){          //verteilt Blockadressen gleichmaessig auf die Versionsworte
+        return (int) ((address * 0x9E3779B97F4A7C15L) >>> versionshift) * VERSION_PADDING;
+    }
 
-        for(int i = 4; i <= MAXBLOCKSIZE_EXPONENT; i++ ){                                       //ab der fuenften Liste wird in der i-ten Liste
-            if(size >= Math.pow(2, i+2) && size < Math.pow(2, i+3)){                            //Bloecke der Groesse 2^(i+1) bis 2^(i+2)-1
-                return i;                                                                      //gespeichert (Array-Indizes, deshalb erste Liste
-            }                                                                                  //bei i=0)
+    public int findFittingBlockList(int size){         //liefert Liste, deren Bloecke alle mindestens size gross sind, -1 falls keine existiert
+
+        size = Math.max(size, SL_INDEX_COUNT);
+        int fl = 31 - Integer.numberOfLeadingZeros(size);
+        size += (1 << (fl - SL_INDEX_COUNT_LOG2)) - 1;                      //rundet auf die naechste Listengrenze auf
+        fl = 31 - Integer.numberOfLeadingZeros(size);
+        if(fl > MAXBLOCKSIZE_EXPONENT) return -1;
+        int sl = (size >>> (fl - SL_INDEX_COUNT_LOG2)) ^ SL_INDEX_COUNT;
+
+        int slmap = slbitmap[fl] & (~0 << sl);
+        if(slmap == 0){                                                     //keine passende Liste in dieser Stufe, naechste nicht leere Stufe wird gesucht
+            int flmap = flbitmap & (~0 << (fl + 1));
+            if(flmap == 0) return -1;
+            fl = Integer.numberOfTrailingZeros(flmap);
+            slmap = slbitmap[fl];
         }
+        return (fl << SL_INDEX_COUNT_LOG2) + Integer.numberOfTrailingZeros(slmap);
+    }
 
-        return MAXBLOCKSIZE_EXPONENT;
+    public int findExactBlockList(int size){           //liefert Liste, in die ein freier Block dieser Groesse eingefuegt wird
+        size = Math.max(size, SL_INDEX_COUNT);
+        int fl = 31 - Integer.numberOfLeadingZeros(size);
+        int sl = (size >>> (fl - SL_INDEX_COUNT_LOG2)) ^ SL_INDEX_COUNT;
+        return (fl << SL_INDEX_COUNT_LOG2) + sl;
     }
 
     public void setListAnchor(int index, long address){
         freeblocks[index] = address;
+        int fl = index >>> SL_INDEX_COUNT_LOG2;
+        int slbit = 1 << (index & (SL_INDEX_COUNT - 1));
+        if(address != 0) {                              //Bitmaps werden mit dem Anker aktualisiert
+            slbitmap[fl] |= slbit;
+            flbitmap |= 1 << fl;
+        } else {
+            slbitmap[fl] &= ~slbit;
+            if(slbitmap[fl] == 0) flbitmap &= ~(1 << fl);
+        }
     }
 
     public long getListAnchor(int index){
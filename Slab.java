@@ -0,0 +1,128 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Slab aus gleich grossen Slots, der aus einem grossen belegten Block des MemoryManagers geschnitten wird.
+// Belegte Slots werden in einer Bitmap gefuehrt, ein Slot besteht nur aus einem Laengenbyte und dem Objekt.
+// Die Slots sind auf gestreifte Versionsworte verteilt (Seqlock): ein ungerades Wort bedeutet, dass ein Slot des
+// Streifens gerade beschrieben wird. Schreiber sperren den Streifen per CAS, Leser validieren gegen das Versionswort.
+
+
+public class Slab {
+
+    public final long block;            //Adresse des Blocks, in dem der Slab liegt
+    public final long startaddress;     //Adresse des ersten Slots
+    public final long endaddress;
+    public final int slotsize;
+    public final int slotcount;
+
+    public static final int VERSION_STRIPES = 16;       //Zweierpotenz
+    public static final int VERSION_PADDING = 8;        //jedes Versionswort liegt in einer eigenen Cache-Line
+    private static final int CLOSED = -1;               //Slab wurde an sein Segment zurueckgegeben
+
+    private final AtomicLongArray bitmap;
+    private final AtomicLongArray versions;
+    private final AtomicInteger usedslots;              //reservierte Slots, CLOSED nach der Rueckgabe
+    private volatile int nextword;      //Bitmap-Wort, in dem zuletzt ein freier Slot gefunden wurde
+
+    public Slab(long block, long startaddress, int size, int slotsize) {
+        this.block = block;
+        this.startaddress = startaddress;
+        this.slotsize = slotsize;
+        this.slotcount = size / slotsize;
+        this.endaddress = startaddress + (long) slotcount * slotsize;
+        int words = (slotcount + 63) / 64;
+        bitmap = new AtomicLongArray(words);
+        if(slotcount % 64 != 0) {
+            bitmap.set(words - 1, -1L << (slotcount % 64));       //nicht vorhandene Slots im letzten Wort gelten als belegt
+        }
+        versions = new AtomicLongArray(VERSION_STRIPES * VERSION_PADDING);
+        usedslots = new AtomicInteger();
+    }
+
+    public long allocateSlot(){                 //liefert Adresse eines freien Slots oder 0, falls der Slab voll oder zurueckgegeben ist
+        int used;
+        do {                                    //Slot wird vor dem Setzen des Bits reserviert, damit close() keinen belegten Slab erwischt
+            used = usedslots.get();
+            if(used == CLOSED || used >= slotcount) return 0;
+        } while(!usedslots.compareAndSet(used, used + 1));
+        int words = bitmap.length();
+        while(true) {                           //reservierter Slot ist frei oder wird es, sobald eine laufende Freigabe endet
+            int start = nextword;
+            for(int i = 0; i < words; i++){
+                int word = start + i;
+                if(word >= words) word -= words;
+                long bits = bitmap.get(word);
+                while(bits != -1L){
+                    int bit = Long.numberOfTrailingZeros(~bits);
+                    if(bitmap.compareAndSet(word, bits, bits | (1L << bit))) {
+                        nextword = word;
+                        return startaddress + (long) (word * 64 + bit) * slotsize;
+                    }
+                    bits = bitmap.get(word);
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    public boolean close(){                     //sperrt einen leeren Slab fuer weitere Allokationen
+        return usedslots.compareAndSet(0, CLOSED);
+    }
+
+    public boolean isClosed(){
+        return usedslots.get() == CLOSED;
+    }
+
+    public boolean isSlot(long address){        //prueft ob an der Adresse ein belegter Slot beginnt
+        long offset = address - startaddress;
+        if(offset % slotsize != 0) return false;
+        int slot = (int) (offset / slotsize);
+        return (bitmap.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    public int freeSlot(long address){          //gibt Slot frei, liefert Anzahl der danach noch belegten Slots
+        int slot = (int) ((address - startaddress) / slotsize);
+        int word = slot >>> 6;
+        long bits;
+        do {
+            bits = bitmap.get(word);
+        } while(!bitmap.compareAndSet(word, bits, bits & ~(1L << slot)));
+        return usedslots.decrementAndGet();
+    }
+
+    public int getUsedSlots(){
+        return Math.max(usedslots.get(), 0);
+    }
+
+    private int getVersionIndex(long address){
+        return (int) ((address - startaddress) / slotsize & (VERSION_STRIPES - 1)) * VERSION_PADDING;
+    }
+
+    public void lockSlot(long address){         //sperrt den Streifen des Slots fuer Schreiber und Leser
+        int index = getVersionIndex(address);
+        while(true) {
+            long version = versions.get(index);
+            if((version & 1) == 0 && versions.compareAndSet(index, version, version + 1)) return;
+            Thread.onSpinWait();
+        }
+    }
+
+    public void unlockSlot(long address, boolean modified){    //ohne Aenderung bleiben optimistische Leser gueltig
+        int index = getVersionIndex(address);
+        if(modified) versions.incrementAndGet(index);
+        else versions.decrementAndGet(index);
+    }
+
+    public long tryOptimisticRead(long address){    //liefert Version des Streifens, -1 waehrend eines Schreibzugriffs
+        long version = versions.get(getVersionIndex(address));
+        return (version & 1) != 0 ? -1 : version;
+    }
+
+    public boolean validate(long address, long stamp){
+        if(stamp == -1) return false;
+        VarHandle.acquireFence();               //Daten muessen vor dem erneuten Lesen der Version gelesen sein
+        return versions.get(getVersionIndex(address)) == stamp;
+    }
+
+}
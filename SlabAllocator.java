@@ -0,0 +1,201 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Slab-Allokator fuer kleine Objekte bis 63B neben dem Heap mit Grenzmarkierungen.
+// Slots werden in 8B-Schritten in Groessenklassen eingeteilt, jede Klasse besitzt einen aktuellen Slab und eine
+// Warteschlange teilweise belegter Slabs. Belegen und Freigeben eines Slots erfolgt ueber die Bitmap ohne Sperre,
+// Inhalte werden unter dem Seqlock des Slots geschrieben und optimistisch gelesen. Leere Slabs, die nicht der aktuelle
+// Slab ihrer Klasse sind, werden an ihr Segment zurueckgegeben.
+// Das Verzeichnis ordnet jeder 32KB-Seite den Slab zu, der in ihr beginnt, so wird der Slab einer Adresse in O(1) gefunden.
+
+
+public class SlabAllocator {
+
+    public static final int MAX_SLAB_OBJECT_SIZE = 63;
+    public static final int SLAB_SIZE = 32768;                  //Groesse des Slot-Bereichs eines Slabs
+    public static final int SLAB_PAGE_SHIFT = 15;               //Seitengroesse des Verzeichnisses entspricht SLAB_SIZE
+    public static final int SLOT_ALIGNMENT = 8;
+
+    private final MemoryManager memoryManager;
+    private volatile Slab[] directory;                          //wird vergroessert, sobald Slabs in neuen Bereichen des Heaps liegen
+    private final AtomicReferenceArray<Slab> current;           //aktueller Slab je Groessenklasse
+    private final ConcurrentLinkedQueue<Slab>[] partial;        //Slabs mit freien Slots je Groessenklasse
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SlabAllocator(MemoryManager memoryManager, long heapsize) {
+        this.memoryManager = memoryManager;
+        int classes = (MAX_SLAB_OBJECT_SIZE + 1) / SLOT_ALIGNMENT;
+        directory = new Slab[(int) (heapsize >>> SLAB_PAGE_SHIFT) + 1];
+        current = new AtomicReferenceArray<>(classes);
+        partial = new ConcurrentLinkedQueue[classes];
+        for(int i = 0; i < classes; i++) partial[i] = new ConcurrentLinkedQueue<>();
+    }
+
+    public <T> long allocate(T object, Codec<T> codec, int objectsize){
+        int slotclass = (objectsize + SLOT_ALIGNMENT) / SLOT_ALIGNMENT - 1;        //Slot enthaelt zusaetzlich das Laengenbyte
+        while(true) {
+            Slab slab = current.get(slotclass);
+            if(slab != null) {
+                long address = slab.allocateSlot();
+                if(address != 0) {
+                    slab.lockSlot(address);                     //Leser einer alten Adresse des Slots werden ungueltig
+                    try {
+                        memoryManager.writeByte(address, (byte) objectsize);
+                        memoryManager.encode(object, codec, address + 1, objectsize);
+                    } finally {
+                        slab.unlockSlot(address, true);
+                    }
+                    return address;
+                }
+            }
+            synchronized (partial[slotclass]) {                 //aktueller Slab ist voll und wird ersetzt
+                if(current.get(slotclass) != slab) continue;
+                Slab next;
+                do {
+                    next = partial[slotclass].poll();
+                } while(next != null && next.isClosed());       //zurueckgegebene Slabs koennen noch in der Warteschlange liegen
+                if(next == null) next = createSlab((slotclass + 1) * SLOT_ALIGNMENT);
+                if(next == null) return 0;
+                current.set(slotclass, next);
+            }
+        }
+    }
+
+    public void free(Slab slab, long address){
+        int used;
+        slab.lockSlot(address);                                 //gleichzeitige Freigaben desselben Slots werden erkannt
+        try {
+            if(!slab.isSlot(address)) {
+                System.out.println("No object at this address");
+                return;
+            }
+            used = slab.freeSlot(address);
+        } finally {
+            slab.unlockSlot(address, true);
+        }
+        if(used == slab.slotcount - 1) {                        //Slab war voll und kann wieder verwendet werden
+            partial[slab.slotsize / SLOT_ALIGNMENT - 1].add(slab);
+        } else if(used == 0) {
+            release(slab);
+        }
+    }
+
+    public int releaseEmptySlabs(){                             //gibt auch leere aktuelle Slabs zurueck, liefert Anzahl der Slabs
+        int released = 0;
+        for(int slotclass = 0; slotclass < current.length(); slotclass++){
+            Slab slab;
+            synchronized (partial[slotclass]) {
+                slab = current.get(slotclass);
+                if(slab == null || !slab.close()) continue;
+                current.set(slotclass, null);                   //naechste Allokation der Klasse holt einen neuen Slab
+            }
+            removeFromDirectory(slab);
+            memoryManager.releaseBlocks(new long[]{slab.block}, 0, 1);
+            released++;
+        }
+        return released;
+    }
+
+    private void release(Slab slab){                            //gibt leeren Slab an sein Segment zurueck
+        int slotclass = slab.slotsize / SLOT_ALIGNMENT - 1;
+        synchronized (partial[slotclass]) {
+            if(current.get(slotclass) == slab || !slab.close()) return;    //aktueller Slab bleibt, inzwischen belegte ebenso
+            partial[slotclass].remove(slab);
+        }
+        removeFromDirectory(slab);
+        memoryManager.releaseBlocks(new long[]{slab.block}, 0, 1);
+    }
+
+    public <T> T read(Slab slab, long address, Codec<T> codec){
+        for(int attempt = 0; attempt < 3; attempt++){           //versucht zunaechst optimistischen Lesezugriff
+            long stamp = slab.tryOptimisticRead(address);
+            T object = null;
+            boolean valid = slab.isSlot(address);
+            int objectsize = memoryManager.readByte(address) & 0xFF;
+            if(valid && objectsize < slab.slotsize) {           //Laengenbyte eines gleichzeitig beschriebenen Slots kann ungueltig sein
+                try {
+                    object = memoryManager.decode(codec, address + 1, objectsize);
+                } catch (RuntimeException e) {                  //Codec kann an gleichzeitig veraenderten Daten scheitern
+                    if(slab.validate(address, stamp)) throw e;
+                    continue;
+                }
+            }
+            if(slab.validate(address, stamp)) {
+                if(!valid) System.out.println("No object at this address");
+                return object;
+            }
+        }
+        slab.lockSlot(address);
+        try {
+            if(!slab.isSlot(address)) {
+                System.out.println("No object at this address");
+                return null;
+            }
+            return memoryManager.decode(codec, address + 1, memoryManager.readByte(address) & 0xFF);
+        } finally {
+            slab.unlockSlot(address, false);
+        }
+    }
+
+    public int readSize(Slab slab, long address){          //liefert Groesse des Objekts im Slot oder -1
+        if(!slab.isSlot(address)) {
+            System.out.println("No object at this address");
+            return -1;
+        }
+        return memoryManager.readByte(address) & 0xFF;
+    }
+
+    public <T> void write(Slab slab, long address, T object, Codec<T> codec, int objectsize){
+        slab.lockSlot(address);
+        try {
+            if(!slab.isSlot(address)) {
+                System.out.println("No object at this address");
+            } else if((memoryManager.readByte(address) & 0xFF) != objectsize) {
+                System.out.println("Object is of different size");
+            } else {
+                memoryManager.encode(object, codec, address + 1, objectsize);
+            }
+        } finally {
+            slab.unlockSlot(address, true);
+        }
+    }
+
+    public Slab findSlab(long address){         //liefert den Slab, in dem die Adresse liegt, oder null
+        Slab[] directory = this.directory;
+        if(address < 0 || (address >>> SLAB_PAGE_SHIFT) >= directory.length) return null;
+        int page = (int) (address >>> SLAB_PAGE_SHIFT);
+        Slab slab = directory[page];
+        if(slab != null && address >= slab.startaddress && address < slab.endaddress) return slab;
+        if(page > 0) {                          //ein Slab erstreckt sich hoechstens ueber zwei Seiten
+            slab = directory[page - 1];
+            if(slab != null && address >= slab.startaddress && address < slab.endaddress) return slab;
+        }
+        return null;
+    }
+
+    private Slab createSlab(int slotsize){
+        long block = memoryManager.reserveBlock(SLAB_SIZE);
+        if(block == 0) return null;
+        Slab slab = new Slab(block, memoryManager.getDataAddress(block), SLAB_SIZE, slotsize);
+        addToDirectory(slab);
+        return slab;
+    }
+
+    private synchronized void removeFromDirectory(Slab slab){
+        int page = (int) (slab.startaddress >>> SLAB_PAGE_SHIFT);
+        if(directory[page] == slab) directory[page] = null;
+    }
+
+    private synchronized void addToDirectory(Slab slab){       //Slabs verschiedener Groessenklassen werden gleichzeitig erzeugt
+        int page = (int) (slab.startaddress >>> SLAB_PAGE_SHIFT);
+        if(page >= directory.length) {
+            Slab[] grown = Arrays.copyOf(directory, Math.max(page + 1, 2 * directory.length));
+            grown[page] = slab;
+            directory = grown;
+        } else {
+            directory[page] = slab;
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+// Codec fuer Strings, jedes Zeichen wird mit 2B direkt in den Block geschrieben.
+
+
+public class StringCodec implements Codec<String> {
+
+    @Override
+    public int getEncodedSize(String object){
+        return object.length() * Character.BYTES;
+    }
+
+    @Override
+    public void encode(String object, OffHeapAccess target, long address){
+        for(int i = 0; i < object.length(); i++){
+            target.writeChar(address + (long) i * Character.BYTES, object.charAt(i));
+        }
+    }
+
+    @Override
+    public String decode(OffHeapAccess source, long address, int size){
+        char[] value = new char[size / Character.BYTES];
+        for(int i = 0; i < value.length; i++){
+            value[i] = source.readChar(address + (long) i * Character.BYTES);
+        }
+        return new String(value);
+    }
+
+}
@@ -0,0 +1,99 @@
+// Wiederverwendbarer Zugriff auf die Felder eines Objekts im OffHeap ohne das Objekt zu kopieren.
+// Mit wrap wird der Zugriff auf ein alloziertes Objekt gesetzt, danach liest und schreibt jeder Feldzugriff genau
+// ein Feld ueber OffHeapAccess. Feldzugriffe erfolgen ohne Segmentsperre, das Objekt darf waehrenddessen nicht
+// freigegeben werden.
+
+
+public class Struct {
+
+    private final MemoryManager memoryManager;
+    private final StructLayout layout;
+    private long address;           //Adresse des Objekts, 0 falls kein Objekt gesetzt ist
+    private long dataaddress;       //Adresse des ersten Felds
+
+    public Struct(MemoryManager memoryManager, StructLayout layout) {
+        this.memoryManager = memoryManager;
+        this.layout = layout;
+    }
+
+    public boolean wrap(long address){                          //setzt Zugriff auf das Objekt an der Adresse
+        int objectsize = memoryManager.getObjectSize(address);
+        if(objectsize < 0) return false;
+        if(objectsize < layout.getSize()) {
+            System.out.println("Object is of different size");
+            return false;
+        }
+        this.address = address;
+        this.dataaddress = memoryManager.getObjectAddress(address);
+        return true;
+    }
+
+    public long getAddress(){
+        return address;
+    }
+
+    public byte getByte(int offset){
+        return memoryManager.readByte(dataaddress + offset);
+    }
+
+    public void setByte(int offset, byte value){
+        memoryManager.writeByte(dataaddress + offset, value);
+    }
+
+    public short getShort(int offset){
+        return memoryManager.readShort(dataaddress + offset);
+    }
+
+    public void setShort(int offset, short value){
+        memoryManager.writeShort(dataaddress + offset, value);
+    }
+
+    public int getInt(int offset){
+        return memoryManager.readInt(dataaddress + offset);
+    }
+
+    public void setInt(int offset, int value){
+        memoryManager.writeInt(dataaddress + offset, value);
+    }
+
+    public long getLong(int offset){
+        return memoryManager.readLong(dataaddress + offset);
+    }
+
+    public void setLong(int offset, long value){
+        memoryManager.writeLong(dataaddress + offset, value);
+    }
+
+    public double getDouble(int offset){
+        return memoryManager.readDouble(dataaddress + offset);
+    }
+
+    public void setDouble(int offset, double value){
+        memoryManager.writeDouble(dataaddress + offset, value);
+    }
+
+    public int getInt(String name){                             //Zugriffe ueber den Namen suchen den Offset im Layout
+        return getInt(layout.getOffset(name));
+    }
+
+    public void setInt(String name, int value){
+        setInt(layout.getOffset(name), value);
+    }
+
+    public long getLong(String name){
+        return getLong(layout.getOffset(name));
+    }
+
+    public void setLong(String name, long value){
+        setLong(layout.getOffset(name), value);
+    }
+
+    public double getDouble(String name){
+        return getDouble(layout.getOffset(name));
+    }
+
+    public void setDouble(String name, double value){
+        setDouble(layout.getOffset(name), value);
+    }
+
+}
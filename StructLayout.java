@@ -0,0 +1,51 @@
+import java.util.HashMap;
+
+// Beschreibt den Aufbau eines Objekts aus primitiven Feldern mit festen Offsets.
+// Felder werden in der Reihenfolge des Hinzufuegens ohne Luecken angeordnet, die Methoden liefern den Offset
+// des neuen Felds, der fuer schnelle Zugriffe ueber Struct verwendet werden kann.
+
+
+public class StructLayout {
+
+    private final HashMap<String, Integer> offsets = new HashMap<>();
+    private int size;
+
+    public int addByte(String name){
+        return addField(name, Byte.BYTES);
+    }
+
+    public int addShort(String name){
+        return addField(name, Short.BYTES);
+    }
+
+    public int addInt(String name){
+        return addField(name, Integer.BYTES);
+    }
+
+    public int addLong(String name){
+        return addField(name, Long.BYTES);
+    }
+
+    public int addDouble(String name){
+        return addField(name, Double.BYTES);
+    }
+
+    public int addField(String name, int fieldsize){        //fuegt Feld beliebiger Groesse hinzu, z.B. fuer Arrays oder Strings
+        if(offsets.containsKey(name)) throw new IllegalArgumentException("Field " + name + " already exists");
+        int offset = size;
+        offsets.put(name, offset);
+        size += fieldsize;
+        return offset;
+    }
+
+    public int getOffset(String name){
+        Integer offset = offsets.get(name);
+        if(offset == null) throw new IllegalArgumentException("Unknown field " + name);
+        return offset;
+    }
+
+    public int getSize(){
+        return size;
+    }
+
+}
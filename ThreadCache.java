@@ -0,0 +1,73 @@
+// Thread-lokaler Cache fuer kleine Bloecke, der vor den Segmenten des MemoryManagers liegt.
+// Bloecke im Cache bleiben im OffHeap als belegt markiert, damit sie beim Zusammenfassen freier Nachbarn nicht
+// beruecksichtigt werden. Da die Laengenfelder die Ausdehnung eines Blocks bestimmen, wird je Objektgroesse eine
+// eigene Liste gefuehrt. Befuellt und geleert wird blockweise, sodass nur dabei die Segmentsperre geholt wird.
+
+
+public class ThreadCache {
+
+    public static final int MAX_CACHED_SIZE = 255;     //groesstes Objekt mit 1B Laengenfeld im Layout v1
+    public static final int DEFAULT_BIN_CAPACITY = 64;
+
+    private final MemoryManager memoryManager;
+    private final Thread owner;         //Bloecke eines beendeten Threads gibt der MemoryManager zurueck
+    private final int bincapacity;
+    private final int refillcount;
+    private final long[][] bins;        //Adressen der zwischengespeicherten Bloecke je Objektgroesse
+    private final int[] counts;
+
+    public ThreadCache(MemoryManager memoryManager, int bincapacity) {
+        this.memoryManager = memoryManager;
+        this.owner = Thread.currentThread();
+        this.bincapacity = Math.max(bincapacity, 2);
+        this.refillcount = this.bincapacity / 2;
+        bins = new long[MAX_CACHED_SIZE + 1][];
+        counts = new int[MAX_CACHED_SIZE + 1];
+    }
+
+    public long allocate(int objectsize){
+        long[] bin = getBin(objectsize);
+        if(counts[objectsize] == 0) {                   //leere Liste wird mit mehreren Bloecken aus einem Segment befuellt
+            counts[objectsize] = memoryManager.refillBlocks(objectsize, bin, refillcount);
+            if(counts[objectsize] == 0) return 0;
+        }
+        return bin[--counts[objectsize]];
+    }
+
+    public boolean free(long address){
+        int marker = memoryManager.readMarkerLowerBits(address - 1);
+        if(!MemoryManager.isUsedMarker(marker)) return false;
+        int objectsize = memoryManager.readObjectSize(address);
+        if(objectsize > MAX_CACHED_SIZE) return false;
+        long[] bin = getBin(objectsize);
+        if(counts[objectsize] == bincapacity) {         //volle Liste wird zur Haelfte an die Segmente zurueckgegeben
+            memoryManager.releaseBlocks(bin, refillcount, bincapacity);
+            counts[objectsize] = refillcount;
+        }
+        bin[counts[objectsize]++] = address;
+        return true;
+    }
+
+    public void flush(){                                //gibt alle zwischengespeicherten Bloecke zurueck
+        for(int i = 0; i <= MAX_CACHED_SIZE; i++){
+            if(counts[i] > 0) {
+                memoryManager.releaseBlocks(bins[i], 0, counts[i]);
+                counts[i] = 0;
+            }
+        }
+    }
+
+    public boolean isOrphaned(){                        //true, sobald der besitzende Thread beendet ist, danach greift er nicht mehr zu
+        return !owner.isAlive();
+    }
+
+    private long[] getBin(int objectsize){
+        long[] bin = bins[objectsize];
+        if(bin == null) {
+            bin = new long[bincapacity];
+            bins[objectsize] = bin;
+        }
+        return bin;
+    }
+
+}
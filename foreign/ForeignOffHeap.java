@@ -0,0 +1,151 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+
+// Zugriff auf den OffHeap ueber die Foreign Function & Memory API (JDK 22) statt sun.misc.Unsafe.
+// Der Speicher wird von einer geteilten Arena verwaltet, alle Zugriffe laufen ueber die Layouts des Segments
+// und werden gegen dessen Grenzen geprueft. Adressen sind wie bei OffHeap absolute Adressen.
+
+
+public class ForeignOffHeap implements OffHeapAccess {
+
+    public long startaddress;   //Adresse des OffHeaps
+    private final long size;    //Groesse des OffHeaps
+
+    private final Arena arena;
+    private final MemorySegment segment;
+
+    public ForeignOffHeap(long size) {
+        this(Arena.ofShared(), size);
+    }
+
+    private ForeignOffHeap(Arena arena, long size) {
+        this(arena, arena.allocate(size, Long.BYTES));          //Speicher wird bereits mit 0 initialisiert
+    }
+
+    protected ForeignOffHeap(Arena arena, MemorySegment segment) {   //verwendet ein bereits vorhandenes Segment, z.B. eine gemappte Datei
+        this.arena = arena;
+        this.segment = segment;
+        this.size = segment.byteSize();
+        this.startaddress = segment.address();
+    }
+
+    @Override
+    public long getStartAddress(){
+        return startaddress;
+    }
+
+    @Override
+    public long getSize(){
+        return size;
+    }
+
+    @Override
+    public void freeMemory(long address){
+        arena.close();
+    }   //Gibt den allozierten Speicher frei
+
+    @Override
+    public void writeInt(long address, int value){
+        segment.set(ValueLayout.JAVA_INT_UNALIGNED, address - startaddress, value);
+    }
+
+    @Override
+    public void writeLong(long address, long value){
+        segment.set(ValueLayout.JAVA_LONG_UNALIGNED, address - startaddress, value);
+    }
+
+    @Override
+    public void writeDouble(long address, double value){
+        segment.set(ValueLayout.JAVA_DOUBLE_UNALIGNED, address - startaddress, value);
+    }
+
+    @Override
+    public void writeChar(long address, char value){
+        segment.set(ValueLayout.JAVA_CHAR_UNALIGNED, address - startaddress, value);
+    }
+
+    @Override
+    public void writeByte(long address, byte value){
+        segment.set(ValueLayout.JAVA_BYTE, address - startaddress, value);
+    }
+
+    @Override
+    public void writeShort(long address, short value){
+        segment.set(ValueLayout.JAVA_SHORT_UNALIGNED, address - startaddress, value);
+    }
+
+    @Override
+    public void writeFloat(long address, float value){
+        segment.set(ValueLayout.JAVA_FLOAT_UNALIGNED, address - startaddress, value);
+    }
+
+    @Override
+    public void writeBoolean(long address, boolean value){
+        segment.set(ValueLayout.JAVA_BOOLEAN, address - startaddress, value);
+    }
+
+    @Override
+    public int readInt(long address){
+        return segment.get(ValueLayout.JAVA_INT_UNALIGNED, address - startaddress);
+    }
+
+    @Override
+    public long readLong(long address){
+        return segment.get(ValueLayout.JAVA_LONG_UNALIGNED, address - startaddress);
+    }
+
+    @Override
+    public double readDouble(long address){
+        return segment.get(ValueLayout.JAVA_DOUBLE_UNALIGNED, address - startaddress);
+    }
+
+    @Override
+    public char readChar(long address){
+        return segment.get(ValueLayout.JAVA_CHAR_UNALIGNED, address - startaddress);
+    }
+
+    @Override
+    public byte readByte(long address){
+        return segment.get(ValueLayout.JAVA_BYTE, address - startaddress);
+    }
+
+    @Override
+    public short readShort(long address){
+        return segment.get(ValueLayout.JAVA_SHORT_UNALIGNED, address - startaddress);
+    }
+
+    @Override
+    public float readFloat(long address){
+        return segment.get(ValueLayout.JAVA_FLOAT_UNALIGNED, address - startaddress);
+    }
+
+    @Override
+    public boolean readBoolean(long address){
+        return segment.get(ValueLayout.JAVA_BOOLEAN, address - startaddress);
+    }
+
+    @Override
+    public void copyToArray(long address, byte[] destination, int offset, int length){
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, address - startaddress, destination, offset, length);
+    }
+
+    @Override
+    public void copyFromArray(byte[] source, int offset, long address, int length){
+        MemorySegment.copy(source, offset, segment, ValueLayout.JAVA_BYTE, address - startaddress, length);
+    }
+
+    @Override
+    public void copyToBuffer(long address, ByteBuffer destination, int length){
+        int position = destination.position();
+        MemorySegment.copy(segment, address - startaddress, MemorySegment.ofBuffer(destination), 0, length);
+        destination.position(position + length);
+    }
+
+    @Override
+    public void copyMemory(long source, long destination, long length){
+        MemorySegment.copy(segment, source - startaddress, segment, destination - startaddress, length);
+    }
+
+}
@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// OffHeap, der in eine Datei gemappt ist, damit der Heap einen Neustart des Prozesses ueberdauert.
+// Vor dem eigentlichen Heap liegt ein Kopfbereich mit den Parametern des MemoryManagers und je Segment
+// Grenzen, belegtem Speicher und Ankern der Freispeicherlisten. Da Adressen relativ zum Heapanfang vergeben
+// werden, bleiben sie auch gueltig, wenn die Datei an eine andere Adresse gemappt wird.
+//
+// Aufbau des Kopfbereichs: Magic, Version, Layout, Segmente, Blockgroesse, Heapgroesse, Kennzeichen fuer sauberes
+// Beenden, danach je Segment Startadresse, Endadresse, belegter Speicher und alle Listenanker (jeweils 8B).
+// Das Kennzeichen wird beim Oeffnen geloescht und erst nach dem Sichern der Segmentkoepfe in cleanup() gesetzt. Fehlt
+// es, wurde der Prozess zwischendurch beendet und die Anker im Kopfbereich sind moeglicherweise veraltet.
+
+
+public class MappedOffHeap extends ForeignOffHeap implements PersistentHeap {
+
+    public static final long MAGIC = 0x4F4646484541500AL;
+    public static final int VERSION = 2;
+    public static final int PAGE_SIZE = 4096;
+
+    private static final int FIXED_HEADER_SIZE = 40;
+    private static final int CLEAN_SHUTDOWN_OFFSET = 32;
+    private static final int SEGMENT_RECORD_SIZE = (3 + SegmentHeader.SL_INDEX_COUNT * (SegmentHeader.MAXBLOCKSIZE_EXPONENT + 1)) * Long.BYTES;
+
+    private final MemorySegment file;           //gesamte gemappte Datei aus Kopfbereich und Heap
+    private final MemorySegment header;
+    private final boolean initialized;          //true, falls eine bestehende Heapdatei geoeffnet wurde
+
+    private MappedOffHeap(Arena arena, MemorySegment file, long headersize, boolean initialized) {
+        super(arena, file.asSlice(headersize));
+        this.file = file;
+        this.header = file.asSlice(0, headersize);
+        this.initialized = initialized;
+    }
+
+    public static MappedOffHeap open(Path path, long size, int segments) throws IOException {   //oeffnet bestehende Heapdatei oder legt sie an
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Arena arena = Arena.ofShared();
+            boolean initialized = channel.size() >= FIXED_HEADER_SIZE;
+            if (initialized) {                                          //Parameter der bestehenden Datei haben Vorrang
+                MemorySegment fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0, FIXED_HEADER_SIZE, arena);
+                initialized = fixed.get(ValueLayout.JAVA_LONG_UNALIGNED, 0) == MAGIC
+                        && fixed.get(ValueLayout.JAVA_INT_UNALIGNED, 8) == VERSION;
+                if (initialized) {
+                    segments = fixed.get(ValueLayout.JAVA_INT_UNALIGNED, 16);
+                    size = fixed.get(ValueLayout.JAVA_LONG_UNALIGNED, 24);
+                }
+            }
+            long headersize = getHeaderSize(segments);
+            MemorySegment file = channel.map(FileChannel.MapMode.READ_WRITE, 0, headersize + size, arena);
+            return new MappedOffHeap(arena, file, headersize, initialized);
+        }
+    }
+
+    public static boolean exists(Path path){
+        return Files.exists(path);
+    }
+
+    private static long getHeaderSize(int segments){                    //Kopfbereich wird auf ganze Seiten aufgerundet
+        long size = FIXED_HEADER_SIZE + (long) segments * SEGMENT_RECORD_SIZE;
+        return (size + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+    }
+
+    public boolean isInitialized(){
+        return initialized;
+    }
+
+    public int readLayout(){
+        return header.get(ValueLayout.JAVA_INT_UNALIGNED, 12);
+    }
+
+    public int readSegments(){
+        return header.get(ValueLayout.JAVA_INT_UNALIGNED, 16);
+    }
+
+    public int readInitBlockSize(){
+        return header.get(ValueLayout.JAVA_INT_UNALIGNED, 20);
+    }
+
+    public void writeParameters(int layout, int segments, int initblocksize){
+        header.set(ValueLayout.JAVA_INT_UNALIGNED, 8, VERSION);
+        header.set(ValueLayout.JAVA_INT_UNALIGNED, 12, layout);
+        header.set(ValueLayout.JAVA_INT_UNALIGNED, 16, segments);
+        header.set(ValueLayout.JAVA_INT_UNALIGNED, 20, initblocksize);
+        header.set(ValueLayout.JAVA_LONG_UNALIGNED, 24, getSize());
+        header.force();
+        header.set(ValueLayout.JAVA_LONG_UNALIGNED, 0, MAGIC);         //Magic zuletzt, damit nur vollstaendige Koepfe gueltig sind
+    }
+
+    public boolean isCleanShutdown(){
+        return header.get(ValueLayout.JAVA_INT_UNALIGNED, CLEAN_SHUTDOWN_OFFSET) != 0;
+    }
+
+    public void writeCleanShutdown(boolean clean){                     //wird sofort auf den Datentraeger geschrieben
+        header.set(ValueLayout.JAVA_INT_UNALIGNED, CLEAN_SHUTDOWN_OFFSET, clean ? 1 : 0);
+        header.force();
+    }
+
+    public void writeSegment(int index, SegmentHeader segment){        //Aufrufer haelt mindestens die Lesesperre des Segments
+        long offset = FIXED_HEADER_SIZE + (long) index * SEGMENT_RECORD_SIZE;
+        header.set(ValueLayout.JAVA_LONG_UNALIGNED, offset, segment.startaddress);
+        header.set(ValueLayout.JAVA_LONG_UNALIGNED, offset + 8, segment.endaddress);
+        header.set(ValueLayout.JAVA_LONG_UNALIGNED, offset + 16, segment.usedspace.sum());
+        MemorySegment.copy(segment.freeblocks, 0, header, ValueLayout.JAVA_LONG_UNALIGNED, offset + 24, segment.freeblocks.length);
+    }
+
+    public SegmentHeader readSegment(int index){                        //erzeugt SegmentHeader aus dem Kopfbereich, Bitmaps werden aus den Ankern berechnet
+        long offset = FIXED_HEADER_SIZE + (long) index * SEGMENT_RECORD_SIZE;
+        long startaddress = header.get(ValueLayout.JAVA_LONG_UNALIGNED, offset);
+        long endaddress = header.get(ValueLayout.JAVA_LONG_UNALIGNED, offset + 8);
+        SegmentHeader segment = new SegmentHeader(startaddress, endaddress - startaddress);
+        segment.usedspace.add(header.get(ValueLayout.JAVA_LONG_UNALIGNED, offset + 16));
+        for(int i = 0; i < segment.freeblocks.length; i++){
+            segment.setListAnchor(i, header.get(ValueLayout.JAVA_LONG_UNALIGNED, offset + 24 + (long) i * Long.BYTES));
+        }
+        return segment;
+    }
+
+    public void force(){                                                //schreibt Kopf und Heap auf den Datentraeger
+        file.force();
+    }
+
+    @Override
+    public void freeMemory(long address){
+        force();
+        super.freeMemory(address);
+    }
+
+}
@@ -0,0 +1,48 @@
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+// Gibt Seiten im Inneren freier Bloecke mit madvise(MADV_DONTNEED) an das Betriebssystem zurueck (nur Linux).
+// Der Aufruf erfolgt ueber die Foreign Function & Memory API. Beim naechsten Zugriff werden die Seiten vom
+// Betriebssystem mit 0 gefuellt neu eingeblendet, daher duerfen nur Bereiche ohne Verwaltungsdaten freigegeben werden.
+
+
+public class Trimmer {
+
+    public static final int PAGE_SIZE = 4096;
+    private static final int MADV_DONTNEED = 4;                 //Wert unter Linux, andere Systeme verwenden andere Werte und Semantik
+    private static final boolean LINUX = System.getProperty("os.name", "").toLowerCase().startsWith("linux");
+
+    private static final MethodHandle MADVISE = findMadvise();
+
+    private static MethodHandle findMadvise(){
+        if(!LINUX) return null;
+        try {
+            Linker linker = Linker.nativeLinker();
+            return linker.defaultLookup().find("madvise")
+                    .map(symbol -> linker.downcallHandle(symbol, FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT)))
+                    .orElse(null);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    public static boolean isAvailable(){
+        return MADVISE != null;
+    }
+
+    public static long release(long start, long end){           //gibt alle ganzen Seiten zwischen den physischen Adressen frei, liefert freigegebene Bytes
+        start = (start + PAGE_SIZE - 1) & -PAGE_SIZE;
+        end &= -PAGE_SIZE;
+        if(MADVISE == null || end <= start) return 0;
+        try {
+            int result = (int) MADVISE.invokeExact(MemorySegment.ofAddress(start), end - start, MADV_DONTNEED);
+            return result == 0 ? end - start : 0;
+        } catch (Throwable e) {
+            return 0;
+        }
+    }
+
+}